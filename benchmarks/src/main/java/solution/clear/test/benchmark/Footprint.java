@@ -0,0 +1,116 @@
+package solution.clear.test.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.SplittableRandom;
+import solution.clear.test.entity.User;
+import solution.clear.test.repository.ColumnarUserRepository;
+import solution.clear.test.repository.InMemoryUserRepository;
+import solution.clear.test.repository.UserRepository;
+
+/**
+ * Loads the same users into the in-memory and the columnar repository in turn and reports
+ * the heap and direct memory they keep, the pause of a full collection with them live
+ * and the collections of a read workload that allocates the users it returns.
+ * Run it with the heap that production would have, for example:
+ * <pre>
+ * java -Xms4g -Xmx4g -cp target/benchmarks.jar solution.clear.test.benchmark.Footprint [users [memory|columnar]]
+ * </pre>
+ */
+
+public class Footprint {
+
+    private static final int FULL_COLLECTIONS = 5;
+    private static final int READS = 20_000_000;
+
+    static volatile long sink;
+
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String only = args.length > 1 ? args[1] : null;
+        if (only == null || only.equals("memory"))
+            measure("memory", users, list -> {
+                InMemoryUserRepository repository = new InMemoryUserRepository();
+                repository.set(list);
+                return repository;
+            });
+        if (only == null || only.equals("columnar"))
+            measure("columnar", users, list -> {
+                ColumnarUserRepository repository = new ColumnarUserRepository();
+                repository.set(list);
+                return repository;
+            });
+    }
+
+
+    private interface Loader {
+
+        UserRepository load(List<User> users);
+
+    }
+
+
+    private static void measure(String store, int users, Loader loader) {
+        long heapBefore = usedHeap();
+        long directBefore = directMemory();
+        UserRepository repository = loader.load(Users.generate(users));
+        long heap = usedHeap() - heapBefore;
+        long direct = directMemory() - directBefore;
+
+        long fullPause = 0;
+        for (int i = 0; i < FULL_COLLECTIONS; i++) {
+            long start = System.nanoTime();
+            System.gc();
+            fullPause += System.nanoTime() - start;
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        long[] collections = collections();
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < READS; i++)
+            checksum += repository.findById(1 + random.nextInt(users)).map(User::getVersion).orElse(0L);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] after = collections();
+
+        sink = checksum;
+
+        // counting after the measurements keeps the users live during them
+        System.out.printf("%-8s %,d users: heap %,d MB, direct %,d MB, full gc %.1f ms, "
+                + "%,d reads/s with %d collections taking %d ms%n", store, repository.count(), heap >> 20,
+                direct >> 20, fullPause / 1e6 / FULL_COLLECTIONS, (long) (READS / seconds),
+                after[0] - collections[0], after[1] - collections[1]);
+    }
+
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    private static long directMemory() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct")).mapToLong(BufferPoolMXBean::getMemoryUsed).sum();
+    }
+
+
+    /**
+     * Returns the number and the total time in ms of collections so far.
+     */
+    private static long[] collections() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+}
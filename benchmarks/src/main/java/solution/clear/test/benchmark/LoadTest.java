@@ -0,0 +1,135 @@
+package solution.clear.test.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import solution.clear.test.App;
+import solution.clear.test.repository.InMemoryUserRepository;
+
+/**
+ * Keeps a number of connections busy with GET /api/users/{id} and reports throughput and latency.
+ * Without a URL it starts the application twice, on platform and on virtual threads,
+ * and compares both modes; client and server then share the machine, 
+ * so point it at a separately started server for absolute numbers.
+ * Every connection is a file descriptor on both sides, raise ulimit -n accordingly.
+ * <pre>
+ * java -cp target/benchmarks.jar solution.clear.test.benchmark.LoadTest [connections [seconds [url]]]
+ * </pre>
+ */
+
+public class LoadTest {
+
+    private static final int USERS = 10_000;
+
+    private record Result(String mode, long requests, long errors, double seconds, long[] latencies) {
+
+        long percentile(double p) {
+            return latencies.length == 0 ? 0 : latencies[(int) Math.min(latencies.length - 1, latencies.length * p)];
+        }
+
+
+        @Override
+        public String toString() {
+            return String.format("%-9s %10.0f req/s  errors %d  p50 %.1f ms  p99 %.1f ms  p999 %.1f ms",
+                    mode, requests / seconds, errors, percentile(0.5) / 1e6, percentile(0.99) / 1e6,
+                    percentile(0.999) / 1e6);
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        if (args.length > 2) {
+            System.out.println(load("external", args[2], connections, seconds));
+            return;
+        }
+        List<Result> results = new ArrayList<>();
+        for (boolean virtual : new boolean[] {false, true})
+            results.add(run(virtual, connections, seconds));
+        System.out.println("connections " + connections + ", " + seconds + " s");
+        results.forEach(System.out::println);
+    }
+
+
+    private static Result run(boolean virtual, int connections, int seconds) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .logStartupInfo(false)
+                .properties("server.port=0",
+                        "server.tomcat.max-connections=" + (connections + 1_000),
+                        "server.tomcat.accept-count=" + connections,
+                        "spring.threads.virtual.enabled=" + virtual,
+                        "logging.level.root=WARN")
+                .run()) {
+            context.getBean(InMemoryUserRepository.class).set(Users.generate(USERS));
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            return load(virtual ? "virtual" : "platform", "http://localhost:" + port, connections, seconds);
+        }
+    }
+
+
+    /**
+     * Each connection is a virtual thread sending requests one after another,
+     * the first tenth of the time is warmup and isn't measured.
+     */
+    private static Result load(String mode, String url, int connections, int seconds) throws Exception {
+        long warmupEnd = System.nanoTime() + seconds * 100_000_000L;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        LongAdder errors = new LongAdder();
+        AtomicLong requests = new AtomicLong();
+        long[][] latencies = new long[connections][];
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(30))
+                        .build()) {
+            for (int c = 0; c < connections; c++) {
+                int connection = c;
+                clients.execute(() -> {
+                    SplittableRandom random = new SplittableRandom(connection);
+                    long[] own = new long[1024];
+                    int count = 0;
+                    for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                                URI.create(url + "/api/users/" + (1 + random.nextInt(USERS)))).build();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            long finished = System.nanoTime();
+                            if (response.statusCode() != 200)
+                                errors.increment();
+                            else if (now >= warmupEnd && finished < end) {
+                                if (count == own.length)
+                                    own = Arrays.copyOf(own, count * 2);
+                                own[count++] = finished - now;
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                    }
+                    latencies[connection] = Arrays.copyOf(own, count);
+                    requests.addAndGet(count);
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        }
+        long[] all = Arrays.stream(latencies).filter(l -> l != null).flatMapToLong(Arrays::stream).toArray();
+        Arrays.parallelSort(all);
+        return new Result(mode, requests.get(), errors.sum(), seconds * 0.9, all);
+    }
+
+}
@@ -0,0 +1,120 @@
+package solution.clear.test.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import solution.clear.test.entity.User;
+import solution.clear.test.repository.ColumnarUserRepository;
+import solution.clear.test.repository.InMemoryUserRepository;
+import solution.clear.test.repository.UserRepository;
+
+/**
+ * Point operations and range searches of the in-memory repository
+ * and of the columnar one, which keeps the users outside the heap in segments scanned
+ * in parallel, one per processor unless -p segments= sets their number.
+ * Writes keep the number of users constant, so every iteration
+ * runs against the same dataset size.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"memory", "columnar"})
+    private String store;
+
+    @Param({"0"})
+    private int segments;
+
+    private UserRepository repository;
+
+    private long[] ids;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<User> users = Users.generate(size);
+        if (store.equals("columnar")) {
+            ColumnarUserRepository columnar = new ColumnarUserRepository(segments);
+            columnar.set(users);
+            repository = columnar;
+        } else {
+            InMemoryUserRepository memory = new InMemoryUserRepository();
+            memory.set(users);
+            repository = memory;
+        }
+        ids = users.stream().mapToLong(User::getId).toArray();
+    }
+
+
+    @Benchmark
+    public Optional<User> findById() {
+        return repository.findById(ids[random.nextInt(size)]);
+    }
+
+
+    /**
+     * Replaces an existing user.
+     */
+    @Benchmark
+    public User save() {
+        return repository.save(Users.user(ids[random.nextInt(size)], random));
+    }
+
+
+    /**
+     * Deletes a user and saves a new one in its place, with the email it freed.
+     */
+    @Benchmark
+    public User deleteById() {
+        int slot = random.nextInt(size);
+        User deleted = repository.deleteById(ids[slot]);
+        User replacement = Users.user(0, random);
+        replacement.setEmail(deleted.getEmail());
+        ids[slot] = repository.save(replacement).getId();
+        return deleted;
+    }
+
+
+    /**
+     * Searches a random year, about 1/75 of all users.
+     */
+    @Benchmark
+    public List<User> findByBirthdayAfterAndBefore() {
+        LocalDate from = Users.FIRST_BIRTHDAY.plusDays(random.nextInt(Users.BIRTHDAY_DAYS - 365));
+        return repository.findByBirthdayAfterAndBefore(from, from.plusYears(1));
+    }
+
+
+    /**
+     * Typeahead of the top 10 of about 1/100 of all users.
+     */
+    @Benchmark
+    public List<User> findByNamePrefix() {
+        return repository.findByNamePrefix("last" + (1 + random.nextInt(99)), 10);
+    }
+
+}
@@ -0,0 +1,74 @@
+package solution.clear.test.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import solution.clear.test.entity.User;
+import solution.clear.test.entity.UserJsonModule;
+
+/**
+ * JSON of user lists, with a mapper configured the way Spring Boot configures
+ * the one of the controllers, through the bean serializers or the user module.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    private static final TypeReference<List<User>> LIST_TYPE = new TypeReference<List<User>>() {};
+
+    @Param({"100", "1000", "10000"})
+    private int size;
+
+    @Param({"beans", "module"})
+    private String codec;
+
+    private ObjectMapper objectMapper;
+
+    private List<User> users;
+
+    private byte[] json;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if (codec.equals("module"))
+            builder.modulesToInstall(new UserJsonModule());
+        objectMapper = builder.build();
+        users = Users.generate(size);
+        json = objectMapper.writeValueAsBytes(users);
+    }
+
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(users);
+    }
+
+
+    @Benchmark
+    public List<User> deserialize() throws IOException {
+        return objectMapper.readValue(json, LIST_TYPE);
+    }
+
+}
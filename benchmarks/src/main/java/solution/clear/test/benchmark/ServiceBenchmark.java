@@ -0,0 +1,95 @@
+package solution.clear.test.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import solution.clear.test.App;
+import solution.clear.test.entity.User;
+import solution.clear.test.repository.InMemoryUserRepository;
+import solution.clear.test.service.UserService;
+
+/**
+ * PATCH through the service of the application context, without the web layer.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private ConfigurableApplicationContext context;
+
+    private UserService service;
+
+    private JsonNode patchJson;
+
+    private JsonPatch patch;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("logging.level.root=WARN")
+                .run();
+        context.getBean(InMemoryUserRepository.class).set(Users.generate(size));
+        service = context.getBean(UserService.class);
+        patchJson = new ObjectMapper().readTree(
+                "[{\"op\":\"replace\",\"path\":\"/phone\",\"value\":\"+380960000000\"},"
+                + "{\"op\":\"replace\",\"path\":\"/address\",\"value\":\"Anywhere\"}]");
+        patch = JsonPatch.fromJson(patchJson);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+
+    /**
+     * The generic JsonPatch path.
+     */
+    @Benchmark
+    public User patch() throws Exception {
+        return service.patch(1 + random.nextInt(size), patch);
+    }
+
+
+    /**
+     * The path of PATCH requests, compiled to field access when possible.
+     */
+    @Benchmark
+    public User patchJson() throws Exception {
+        return service.patch(1 + random.nextInt(size), patchJson, null);
+    }
+
+}
@@ -0,0 +1,38 @@
+package solution.clear.test.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import solution.clear.test.entity.User;
+
+/**
+ * Generates users with ids from 1 and birthdays spread over 75 years.
+ */
+
+final class Users {
+
+    static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1930, 1, 1);
+    static final int BIRTHDAY_DAYS = 75 * 365;
+
+
+    private Users() {
+    }
+
+
+    static User user(long id, SplittableRandom random) {
+        return new User(id, "user" + id + "@mail.com", "First" + id, "Last" + random.nextInt(10_000),
+                FIRST_BIRTHDAY.plusDays(random.nextInt(BIRTHDAY_DAYS)), "Street " + random.nextInt(1_000),
+                "+38096" + (1_000_000 + random.nextInt(9_000_000)));
+    }
+
+
+    static List<User> generate(int count) {
+        SplittableRandom random = new SplittableRandom(count);
+        List<User> users = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++)
+            users.add(user(id, random));
+        return users;
+    }
+
+}
@@ -0,0 +1,21 @@
+package solution.clear.test.config;
+
+import com.fasterxml.jackson.databind.Module;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import solution.clear.test.entity.UserJsonModule;
+
+/**
+ * Modules added to the ObjectMapper Spring Boot configures, which the controllers,
+ * the reactive codecs and the service share.
+ */
+
+@Configuration
+public class JacksonConfiguration {
+
+    @Bean
+    Module userJsonModule() {
+        return new UserJsonModule();
+    }
+
+}
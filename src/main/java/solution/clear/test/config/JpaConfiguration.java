@@ -0,0 +1,26 @@
+package solution.clear.test.config;
+
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * The application excludes DataSourceAutoConfiguration, so the jpa profile
+ * declares the data source itself. JPA and Spring Data repositories are 
+ * auto-configured once it exists.
+ */
+
+@Configuration
+@Profile("jpa")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class JpaConfiguration {
+
+    @Bean
+    DataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().build();
+    }
+
+}
@@ -0,0 +1,47 @@
+package solution.clear.test.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import solution.clear.test.repository.InMemoryUserRepository;
+import solution.clear.test.repository.StringDictionary;
+import solution.clear.test.repository.UserRepository;
+
+/**
+ * Gauges of the repository, read on every scrape,
+ * and of the string dictionary of the in-memory repository.
+ */
+
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    MeterBinder repositoryMetrics(UserRepository repository) {
+        return registry -> {
+            Gauge.builder("repository.users", repository, UserRepository::count)
+                    .description("Number of stored users")
+                    .register(registry);
+            if (repository instanceof InMemoryUserRepository memory) {
+                StringDictionary dictionary = memory.dictionary();
+                FunctionCounter.builder("repository.strings.lookups", dictionary, StringDictionary::hits)
+                        .description("Stored names and addresses looked up in the dictionary")
+                        .tag("result", "hit")
+                        .register(registry);
+                FunctionCounter.builder("repository.strings.lookups", dictionary, StringDictionary::misses)
+                        .description("Stored names and addresses looked up in the dictionary")
+                        .tag("result", "miss")
+                        .register(registry);
+                Gauge.builder("repository.strings.hit.ratio", dictionary, StringDictionary::hitRatio)
+                        .description("Share of lookups that found a canonical instance")
+                        .register(registry);
+                FunctionCounter.builder("repository.strings.saved", dictionary, StringDictionary::savedBytes)
+                        .description("Estimated bytes of copies replaced by canonical instances")
+                        .baseUnit("bytes")
+                        .register(registry);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,81 @@
+package solution.clear.test.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every operation of the repository and of the service, tagged by operation
+ * and exception, and records the sizes of returned collections.
+ * Together with http.server.requests of the controllers this splits request latency
+ * into the repository, the service and the web layer (Jackson, validation).
+ */
+
+@Aspect
+@Component
+public class OperationMetrics {
+
+    private static final String NO_EXCEPTION = "none";
+
+    private record Meters(Timer timer, DistributionSummary results) {
+
+    }
+
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+
+    @Around("execution(* solution.clear.test.repository.UserRepository.*(..))")
+    public Object timeRepository(ProceedingJoinPoint point) throws Throwable {
+        return time("repository", point);
+    }
+
+
+    @Around("execution(public * solution.clear.test.service.UserService.*(..))")
+    public Object timeService(ProceedingJoinPoint point) throws Throwable {
+        return time("service", point);
+    }
+
+
+    protected Object time(String layer, ProceedingJoinPoint point) throws Throwable {
+        String operation = point.getSignature().getName();
+        long start = System.nanoTime();
+        try {
+            Object result = point.proceed();
+            Meters success = meters(layer, operation, NO_EXCEPTION);
+            success.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (result instanceof Collection<?> collection)
+                success.results().record(collection.size());
+            return result;
+        } catch (Throwable e) {
+            meters(layer, operation, e.getClass().getSimpleName())
+                    .timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+
+    private Meters meters(String layer, String operation, String exception) {
+        return meters.computeIfAbsent(layer + '.' + operation + '.' + exception, key -> new Meters(
+                Timer.builder(layer + ".operations")
+                        .tag("operation", operation)
+                        .tag("exception", exception)
+                        .register(registry),
+                DistributionSummary.builder(layer + ".results")
+                        .tag("operation", operation)
+                        .register(registry)));
+    }
+
+}
@@ -2,10 +2,12 @@ package solution.clear.test.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.fge.jsonpatch.JsonPatchException;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ConstraintViolationException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -15,25 +17,60 @@ import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import solution.clear.test.exception.AgeNotValidException;
+import solution.clear.test.exception.CursorNotValidException;
+import solution.clear.test.exception.EmailConflictException;
 import solution.clear.test.exception.UserNotFoundException;
+import solution.clear.test.exception.VersionConflictException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
     
     private static final String REQUEST_EXCEPTION = "Request exception";
     
+    @Autowired
+    private MeterRegistry registry;
+    
+    
+    /**
+     * Counts the exceptions by handler, so each branch has its own counter.
+     */
+    protected void count(String handler, Exception ex) {
+        registry.counter("api.exceptions", "handler", handler, "exception", ex.getClass().getSimpleName())
+                .increment();
+    }
+    
 
     @ExceptionHandler(UserNotFoundException.class)
     public ResponseEntity<Map<String, String>> handleUserNotFound(RuntimeException ex) {
+        count("handleUserNotFound", ex);
         Map<String, String> result = new HashMap<>();
         result.put(REQUEST_EXCEPTION, ex.getMessage());
         return new ResponseEntity<>(result, HttpStatus.NOT_FOUND);
     }
     
     
-    @ExceptionHandler( {AgeNotValidException.class, JsonPatchException.class, 
-        JsonProcessingException.class} )
-    public ResponseEntity<Map<String, String>> handleRuntime(RuntimeException ex) {
+    @ExceptionHandler(VersionConflictException.class)
+    public ResponseEntity<Map<String, String>> handleVersionConflict(RuntimeException ex) {
+        count("handleVersionConflict", ex);
+        Map<String, String> result = new HashMap<>();
+        result.put(REQUEST_EXCEPTION, ex.getMessage());
+        return new ResponseEntity<>(result, HttpStatus.PRECONDITION_FAILED);
+    }
+    
+    
+    @ExceptionHandler(EmailConflictException.class)
+    public ResponseEntity<Map<String, String>> handleEmailConflict(RuntimeException ex) {
+        count("handleEmailConflict", ex);
+        Map<String, String> result = new HashMap<>();
+        result.put(REQUEST_EXCEPTION, ex.getMessage());
+        return new ResponseEntity<>(result, HttpStatus.CONFLICT);
+    }
+    
+    
+    @ExceptionHandler( {AgeNotValidException.class, CursorNotValidException.class, 
+        JsonPatchException.class, JsonProcessingException.class} )
+    public ResponseEntity<Map<String, String>> handleRuntime(Exception ex) {
+        count("handleRuntime", ex);
         Map<String, String> result = new HashMap<>();
         result.put(REQUEST_EXCEPTION, ex.getMessage());
         return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
@@ -43,6 +80,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, List<String>>> 
             handleParameterValidationErrors(MethodArgumentNotValidException ex) {
+        count("handleParameterValidationErrors", ex);
         Map<String, List<String>> result = new HashMap<>();
         BindingResult br = ex.getBindingResult(); 
         for (FieldError fieldError : br.getFieldErrors()) {
@@ -59,6 +97,7 @@ public class GlobalExceptionHandler {
     
     @ExceptionHandler(ConstraintViolationException.class)
     public ResponseEntity<Map<String, List<String>>> handleValidationErrors(ConstraintViolationException ex) {
+        count("handleValidationErrors", ex);
         Map<String, List<String>> result = new HashMap<>();
         List<String> errors = ex.getConstraintViolations()
                                     .stream()
@@ -72,6 +111,7 @@ public class GlobalExceptionHandler {
     
     @ExceptionHandler(MissingServletRequestParameterException.class)
     public ResponseEntity<Map<String, String>> handleMissingParameter(MissingServletRequestParameterException ex) {
+        count("handleMissingParameter", ex);
         Map<String, String> result = new HashMap<>();
         result.put(REQUEST_EXCEPTION, ex.getParameterType() + ' ' + ex.getParameterName() + " : "
                 + (ex.isMissingAfterConversion() ? "present but converted to null" : "not present"));
@@ -1,16 +1,34 @@
 package solution.clear.test.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.github.fge.jsonpatch.JsonPatch;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.github.fge.jsonpatch.JsonPatchException;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Past;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -21,35 +39,113 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import solution.clear.test.entity.User;
 import solution.clear.test.exception.UserNotFoundException;
+import solution.clear.test.repository.UserCursor;
+import solution.clear.test.service.BatchResult;
+import solution.clear.test.service.UserJson;
+import solution.clear.test.service.UserPage;
 import solution.clear.test.service.UserService;
 
 @RestController
 @RequestMapping("/api/users")
 @Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
     
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    static final int MAX_PAGE_LIMIT = 1000;
+    
+    static final int MAX_BATCH_SIZE = 50_000;
+    
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${search.page.limit:100}")
+    protected int pageLimit;
+    
+    @Value("${search.suggest.limit:10}")
+    protected int suggestLimit;
+    
 
     protected ResponseEntity<Collection<User>> formStatusCollection(Collection<User> result) {
-        return new ResponseEntity<>(result, result.isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK);
+        return formStatusCollection(result, null);
+    }
+    
+    
+    protected ResponseEntity<Collection<User>> formStatusCollection(Collection<User> result, 
+            HttpHeaders headers) {
+        return new ResponseEntity<>(result, headers, 
+                result.isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK);
     }
     
     
+    /**
+     * The version of the user is its ETag.
+     */
+    protected ResponseEntity<User> formStatusVersioned(User user, HttpStatus status) {
+        return ResponseEntity.status(status).eTag(Long.toString(user.getVersion())).body(user);
+    }
+    
+    
+    /**
+     * Returns the versions an If-Match header accepts, or null if any version will do.
+     * If-Match compares tags strongly (RFC 9110), so weak tags and tags that aren't versions
+     * never match, a header left with none of them fails the precondition.
+     */
+    static Set<Long> acceptedVersions(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank())
+            return null;
+        Set<Long> versions = new HashSet<>();
+        for (String member : ifMatch.split(",")) {
+            String tag = member.trim();
+            if (tag.equals("*"))
+                return null;
+            if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\""))
+                tag = tag.substring(1, tag.length() - 1);
+            try {
+                versions.add(Long.parseLong(tag));
+            } catch (NumberFormatException e) {
+                // a weak or foreign tag
+            }
+        }
+        return versions;
+    }
+    
+    
+    /**
+     * Writes the cached JSON as it is. A request whose If-None-Match has the ETag gets 304 without a body.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<User> get(@PathVariable long id) {
-        return new ResponseEntity<>(userService.getUser(id), HttpStatus.OK);
+    public ResponseEntity<byte[]> get(@PathVariable long id) {
+        UserJson user = userService.getUserJson(id);
+        return ResponseEntity.ok()
+                .eTag(Long.toString(user.version()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(user.json());
+    }
+    
+    
+    /**
+     * Emails are matched regardless of case.
+     */
+    @GetMapping("/by-email")
+    public ResponseEntity<User> getByEmail(@RequestParam @NotBlank String email) {
+        return formStatusVersioned(userService.getUserByEmail(email), HttpStatus.OK);
     }
     
     
     @PostMapping("/new")
     public ResponseEntity<User> newUser(@RequestBody @Valid User user) {
-        return new ResponseEntity<>(userService.create(user), HttpStatus.CREATED);
+        return formStatusVersioned(userService.create(user), HttpStatus.CREATED);
     }
     
     
@@ -60,16 +156,18 @@ public class UserController {
             @RequestParam @Past LocalDate birthday,
             @RequestParam(required = false) String address,
             @RequestParam(required = false) String phone) {
-        return new ResponseEntity<>(
+        return formStatusVersioned(
                 userService.create(email, firstName, lastName, birthday, address, phone),
                 HttpStatus.CREATED);
     }
     
     
     @PatchMapping(path = "/{id}", consumes = "application/json-patch+json")
-    public ResponseEntity<User> patch(@PathVariable long id, @RequestBody JsonPatch patch) 
-            throws JsonProcessingException, JsonPatchException {
-        return new ResponseEntity<>(userService.patch(id, patch), HttpStatus.OK);
+    public ResponseEntity<User> patch(@PathVariable long id, @RequestBody JsonNode patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) 
+            throws IOException, JsonPatchException {
+        return formStatusVersioned(userService.patch(id, patch,
+                userService.expectedVersion(id, acceptedVersions(ifMatch))), HttpStatus.OK);
     }
 
 
@@ -80,16 +178,21 @@ public class UserController {
             @RequestParam(required = false) String lastName, 
             @RequestParam(required = false) @Past LocalDate birthday,
             @RequestParam(required = false) String address,
-            @RequestParam(required = false) String phone) throws UserNotFoundException {
-        return new ResponseEntity<>(
-                userService.update(id, email, firstName, lastName, birthday, address, phone),
+            @RequestParam(required = false) String phone,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) 
+            throws UserNotFoundException {
+        return formStatusVersioned(
+                userService.update(id, email, firstName, lastName, birthday, address, phone, 
+                        userService.expectedVersion(id, acceptedVersions(ifMatch))),
                 HttpStatus.OK);
     }
     
     
     @PutMapping
-    public ResponseEntity<User> update(@RequestBody User user) {
-        return new ResponseEntity<>(userService.update(user), HttpStatus.OK);
+    public ResponseEntity<User> update(@RequestBody User user,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return formStatusVersioned(userService.update(user,
+                userService.expectedVersion(user.getId(), acceptedVersions(ifMatch))), HttpStatus.OK);
     }
     
     
@@ -99,11 +202,67 @@ public class UserController {
     }
     
     
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchResult>> createAll(
+            @RequestBody @NotEmpty @Size(max = MAX_BATCH_SIZE) List<User> users) {
+        return new ResponseEntity<>(userService.createAll(users), HttpStatus.OK);
+    }
+    
+    
+    @PutMapping("/batch")
+    public ResponseEntity<List<BatchResult>> updateAll(
+            @RequestBody @NotEmpty @Size(max = MAX_BATCH_SIZE) List<User> users) {
+        return new ResponseEntity<>(userService.updateAll(users), HttpStatus.OK);
+    }
+    
+    
+    @DeleteMapping("/batch")
+    public ResponseEntity<List<BatchResult>> deleteAll(
+            @RequestBody @NotEmpty @Size(max = MAX_BATCH_SIZE) List<@NotNull Long> ids) {
+        return new ResponseEntity<>(userService.deleteAll(ids), HttpStatus.OK);
+    }
+    
+    
     @GetMapping
     public ResponseEntity<Collection<User>> search(
+            @RequestParam(required = false) LocalDate from,
+            @RequestParam(required = false) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) @Positive @Max(MAX_PAGE_LIMIT) Integer limit) {
+        if (cursor == null && limit == null)
+            return formStatusCollection(userService.search(from, to));
+        UserPage page = userService.search(from, to, UserCursor.decode(cursor), 
+                limit == null ? pageLimit : limit);
+        HttpHeaders headers = new HttpHeaders();
+        if (page.next() != null)
+            headers.set(NEXT_CURSOR_HEADER, page.next().encode());
+        return formStatusCollection(page.users(), headers);
+    }
+    
+    
+    @GetMapping("/suggest")
+    public ResponseEntity<Collection<User>> suggest(@RequestParam @NotBlank String q,
+            @RequestParam(required = false) @Positive @Max(MAX_PAGE_LIMIT) Integer limit) {
+        return formStatusCollection(userService.suggest(q, limit == null ? suggestLimit : limit));
+    }
+    
+    
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(
             @RequestParam(required = false) LocalDate from,
             @RequestParam(required = false) LocalDate to) {
-        return formStatusCollection(userService.search(from, to));
+        Stream<User> users = userService.stream(from, to);
+        ObjectWriter writer = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (users; JsonGenerator generator = writer.createGenerator(out)) {
+                for (Iterator<User> it = users.iterator(); it.hasNext(); ) {
+                    writer.writeValue(generator, it.next());
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
 }
@@ -0,0 +1,367 @@
+package solution.clear.test.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonpatch.JsonPatchException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.CodecException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.AgeNotValidException;
+import solution.clear.test.exception.CursorNotValidException;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.UserNotFoundException;
+import solution.clear.test.exception.VersionConflictException;
+import solution.clear.test.repository.UserCursor;
+import solution.clear.test.service.UserPage;
+import solution.clear.test.service.UserService;
+
+/**
+ * Reactive counterpart of {@link UserController} with the same contract, used when
+ * the application runs as a reactive web application. The service blocks, so it's
+ * called on the bounded elastic scheduler. Like there, an unpaged search returns users
+ * ordered by id from the cached result, while NDJSON exports stream them page by page
+ * in (birthday, id) order, a page is read only when the client has taken the previous one.
+ * Errors get the responses of {@link GlobalExceptionHandler}.
+ */
+
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class UserHandler {
+
+    private static final ParameterizedTypeReference<List<User>> USER_LIST = 
+            new ParameterizedTypeReference<List<User>>() {};
+    
+    private static final ParameterizedTypeReference<List<Long>> ID_LIST = 
+            new ParameterizedTypeReference<List<Long>>() {};
+
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    private GlobalExceptionHandler exceptionHandler;
+    
+    @Value("${search.page.limit:100}")
+    protected int pageLimit;
+    
+    @Value("${search.suggest.limit:10}")
+    protected int suggestLimit;
+    
+    @Value("${search.export.chunk:1000}")
+    protected int chunk;
+
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    private static long id(ServerRequest request) {
+        return Long.parseLong(request.pathVariable("id"));
+    }
+
+
+    private static String param(ServerRequest request, String name, boolean required) {
+        Optional<String> value = request.queryParam(name);
+        if (required && value.isEmpty())
+            throw new ParameterMissingException(name, "String");
+        return value.orElse(null);
+    }
+
+
+    private static LocalDate date(ServerRequest request, String name, boolean required) {
+        String value = param(request, name, required);
+        return value == null ? null : LocalDate.parse(value);
+    }
+
+
+    /**
+     * Versions accepted by all If-Match headers of the request, null if any version will do.
+     */
+    private static Set<Long> acceptedVersions(ServerRequest request) {
+        List<String> headers = request.headers().header(HttpHeaders.IF_MATCH);
+        return UserController.acceptedVersions(headers.isEmpty() ? null : String.join(",", headers));
+    }
+
+
+    /**
+     * MissingServletRequestParameterException only to reuse its handler, there's no servlet here.
+     */
+    private static class ParameterMissingException extends RuntimeException {
+
+        private static final long serialVersionUID = 8022367143627469145L;
+
+        private final MissingServletRequestParameterException cause;
+
+
+        ParameterMissingException(String name, String type) {
+            super(name);
+            cause = new MissingServletRequestParameterException(name, type);
+        }
+
+    }
+
+
+    /**
+     * Validates request parameters against the constraints of the user properties.
+     */
+    private void validate(Set<ConstraintViolation<User>> violations, String property, Object value) {
+        if (value != null)
+            violations.addAll(validator.validateValue(User.class, property, value));
+    }
+
+
+    private static void check(Set<? extends ConstraintViolation<?>> violations) {
+        if (!violations.isEmpty())
+            throw new ConstraintViolationException(violations);
+    }
+
+
+    private static <T> List<T> checkBatch(List<T> batch) {
+        if (batch.isEmpty() || batch.size() > UserController.MAX_BATCH_SIZE)
+            throw new ServerWebInputException("Batch size must be between 1 and " + UserController.MAX_BATCH_SIZE);
+        return batch;
+    }
+
+
+    private static Mono<ServerResponse> versioned(ServerResponse.BodyBuilder builder, User user) {
+        return builder.eTag(Long.toString(user.getVersion())).contentType(MediaType.APPLICATION_JSON).bodyValue(user);
+    }
+
+
+    private static Mono<ServerResponse> collection(List<?> result, HttpHeaders headers) {
+        return ServerResponse.status(result.isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK)
+                .headers(h -> h.addAll(headers))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(result);
+    }
+
+
+    public Mono<ServerResponse> get(ServerRequest request) {
+        long id = id(request);
+        return blocking(() -> userService.getUserJson(id))
+                .flatMap(user -> {
+                    String etag = Long.toString(user.version());
+                    return request.checkNotModified(etag)
+                            .switchIfEmpty(ServerResponse.ok().eTag(etag)
+                                    .contentType(MediaType.APPLICATION_JSON).bodyValue(user.json()));
+                });
+    }
+
+
+    public Mono<ServerResponse> getByEmail(ServerRequest request) {
+        String email = param(request, "email", true);
+        return blocking(() -> userService.getUserByEmail(email)).flatMap(user -> versioned(ServerResponse.ok(), user));
+    }
+
+
+    public Mono<ServerResponse> newUser(ServerRequest request) {
+        return request.bodyToMono(User.class)
+                .doOnNext(user -> check(validator.validate(user)))
+                .flatMap(user -> blocking(() -> userService.create(user)))
+                .flatMap(user -> versioned(ServerResponse.status(HttpStatus.CREATED), user));
+    }
+
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        String email = param(request, "email", true);
+        String firstName = param(request, "firstName", true);
+        String lastName = param(request, "lastName", true);
+        LocalDate birthday = date(request, "birthday", true);
+        String address = param(request, "address", false);
+        String phone = param(request, "phone", false);
+        check(validator.validate(new User(0, email, firstName, lastName, birthday, address, phone)));
+        return blocking(() -> userService.create(email, firstName, lastName, birthday, address, phone))
+                .flatMap(user -> versioned(ServerResponse.status(HttpStatus.CREATED), user));
+    }
+
+
+    public Mono<ServerResponse> patch(ServerRequest request) {
+        long id = id(request);
+        Set<Long> versions = acceptedVersions(request);
+        return request.bodyToMono(JsonNode.class)
+                .flatMap(patch -> blocking(() -> userService.patch(id, patch,
+                        userService.expectedVersion(id, versions))))
+                .flatMap(user -> versioned(ServerResponse.ok(), user));
+    }
+
+
+    public Mono<ServerResponse> updateFields(ServerRequest request) {
+        long id = id(request);
+        Set<Long> versions = acceptedVersions(request);
+        String email = param(request, "email", false);
+        String firstName = param(request, "firstName", false);
+        String lastName = param(request, "lastName", false);
+        LocalDate birthday = date(request, "birthday", false);
+        String address = param(request, "address", false);
+        String phone = param(request, "phone", false);
+        Set<ConstraintViolation<User>> violations = new HashSet<>();
+        validate(violations, "email", email);
+        validate(violations, "birthday", birthday);
+        check(violations);
+        return blocking(() -> userService.update(id, email, firstName, lastName, birthday, address, phone,
+                userService.expectedVersion(id, versions)))
+                .flatMap(user -> versioned(ServerResponse.ok(), user));
+    }
+
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        Set<Long> versions = acceptedVersions(request);
+        return request.bodyToMono(User.class)
+                .flatMap(user -> blocking(() -> userService.update(user,
+                        userService.expectedVersion(user.getId(), versions))))
+                .flatMap(user -> versioned(ServerResponse.ok(), user));
+    }
+
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        long id = id(request);
+        return blocking(() -> userService.delete(id))
+                .flatMap(user -> ServerResponse.status(HttpStatus.NO_CONTENT)
+                        .contentType(MediaType.APPLICATION_JSON).bodyValue(user));
+    }
+
+
+    public Mono<ServerResponse> createAll(ServerRequest request) {
+        return request.bodyToMono(USER_LIST)
+                .flatMap(users -> blocking(() -> userService.createAll(checkBatch(users))))
+                .flatMap(results -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(results));
+    }
+
+
+    public Mono<ServerResponse> updateAll(ServerRequest request) {
+        return request.bodyToMono(USER_LIST)
+                .flatMap(users -> blocking(() -> userService.updateAll(checkBatch(users))))
+                .flatMap(results -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(results));
+    }
+
+
+    public Mono<ServerResponse> deleteAll(ServerRequest request) {
+        return request.bodyToMono(ID_LIST)
+                .flatMap(ids -> blocking(() -> userService.deleteAll(checkBatch(ids))))
+                .flatMap(results -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(results));
+    }
+
+
+    public Mono<ServerResponse> search(ServerRequest request) {
+        LocalDate from = date(request, "from", false);
+        LocalDate to = date(request, "to", false);
+        String cursor = param(request, "cursor", false);
+        String limitParam = param(request, "limit", false);
+        if (cursor == null && limitParam == null)
+            return blocking(() -> userService.search(from, to)).flatMap(users -> collection(users, new HttpHeaders()));
+        int limit = limitParam == null ? pageLimit : Integer.parseInt(limitParam);
+        if (limit <= 0 || limit > UserController.MAX_PAGE_LIMIT)
+            throw new ServerWebInputException("Limit must be between 1 and " + UserController.MAX_PAGE_LIMIT);
+        return blocking(() -> userService.search(from, to, UserCursor.decode(cursor), limit))
+                .flatMap(page -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    if (page.next() != null)
+                        headers.set(UserController.NEXT_CURSOR_HEADER, page.next().encode());
+                    return collection(page.users(), headers);
+                });
+    }
+
+
+    public Mono<ServerResponse> suggest(ServerRequest request) {
+        String q = param(request, "q", true);
+        if (q.isBlank())
+            throw new ServerWebInputException("Parameter q must not be blank");
+        String limitParam = param(request, "limit", false);
+        int limit = limitParam == null ? suggestLimit : Integer.parseInt(limitParam);
+        if (limit <= 0 || limit > UserController.MAX_PAGE_LIMIT)
+            throw new ServerWebInputException("Limit must be between 1 and " + UserController.MAX_PAGE_LIMIT);
+        return blocking(() -> userService.suggest(q, limit)).flatMap(users -> collection(users, new HttpHeaders()));
+    }
+
+
+    public Mono<ServerResponse> export(ServerRequest request) {
+        return stream(date(request, "from", false), date(request, "to", false));
+    }
+
+
+    /**
+     * Reads the first page, then streams the rest.
+     */
+    protected Mono<ServerResponse> stream(LocalDate from, LocalDate to) {
+        return blocking(() -> userService.search(from, to, null, chunk))
+                .flatMap(first -> ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+                        .body(Flux.fromIterable(first.users()).concatWith(pages(from, to, first)), User.class));
+    }
+
+
+    /**
+     * Pages after the first one, each read on demand.
+     */
+    protected Flux<User> pages(LocalDate from, LocalDate to, UserPage first) {
+        if (first.next() == null)
+            return Flux.empty();
+        return Flux.<List<User>, Optional<UserCursor>>generate(() -> Optional.of(first.next()), (cursor, sink) -> {
+                    if (cursor.isEmpty()) {
+                        sink.complete();
+                        return cursor;
+                    }
+                    UserPage page = userService.search(from, to, cursor.get(), chunk);
+                    sink.next(page.users());
+                    return Optional.ofNullable(page.next());
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .concatMapIterable(Function.identity(), 1);
+    }
+
+
+    /**
+     * Maps the exceptions of the handlers like the controller advice does for the controller.
+     */
+    public Mono<ServerResponse> error(Throwable e) {
+        ResponseEntity<?> response;
+        if (e instanceof UserNotFoundException ex)
+            response = exceptionHandler.handleUserNotFound(ex);
+        else if (e instanceof VersionConflictException ex)
+            response = exceptionHandler.handleVersionConflict(ex);
+        else if (e instanceof EmailConflictException ex)
+            response = exceptionHandler.handleEmailConflict(ex);
+        else if (e instanceof ConstraintViolationException ex)
+            response = exceptionHandler.handleValidationErrors(ex);
+        else if (e instanceof ParameterMissingException ex)
+            response = exceptionHandler.handleMissingParameter(ex.cause);
+        else if (e instanceof AgeNotValidException || e instanceof CursorNotValidException
+                || e instanceof JsonPatchException || e instanceof JsonProcessingException
+                || e instanceof CodecException || e instanceof ServerWebInputException
+                || e instanceof DateTimeParseException || e instanceof NumberFormatException)
+            response = exceptionHandler.handleRuntime((Exception) e);
+        else
+            return Mono.error(e);
+        return ServerResponse.status(response.getStatusCode()).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(response.getBody());
+    }
+
+}
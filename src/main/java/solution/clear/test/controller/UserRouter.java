@@ -0,0 +1,53 @@
+package solution.clear.test.controller;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Routes of the reactive variant, run with spring.main.web-application-type=reactive.
+ * NDJSON export is routed only when asked for explicitly, like the produces mapping of the controller.
+ */
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class UserRouter {
+
+    @Bean
+    RouterFunction<ServerResponse> userRoutes(UserHandler handler) {
+        return RouterFunctions.route()
+                .path("/api/users", users -> users
+                        .POST("/batch", handler::createAll)
+                        .PUT("/batch", handler::updateAll)
+                        .DELETE("/batch", handler::deleteAll)
+                        .POST("/new", handler::newUser)
+                        .GET("/by-email", handler::getByEmail)
+                        .GET("/suggest", handler::suggest)
+                        .GET("/{id}", handler::get)
+                        .PATCH("/{id}", contentType(MediaType.valueOf("application/json-patch+json")), handler::patch)
+                        .PUT("/{id}", handler::updateFields)
+                        .DELETE("/{id}", handler::delete)
+                        .GET("", UserRouter::acceptsNdjson, handler::export)
+                        .GET("", handler::search)
+                        .POST("", handler::create)
+                        .PUT("", handler::update))
+                .filter((request, next) -> Mono.defer(() -> next.handle(request)).onErrorResume(handler::error))
+                .build();
+    }
+
+
+    /**
+     * Whether NDJSON is named in the Accept header, with parameters or not. Wildcards don't count.
+     */
+    private static boolean acceptsNdjson(ServerRequest request) {
+        return request.headers().accept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+    }
+
+}
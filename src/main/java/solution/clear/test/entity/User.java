@@ -4,30 +4,44 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Past;
 import java.time.LocalDate;
+import java.util.Locale;
 import java.util.Objects;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
+@Table(name = "users", indexes = {
+            @Index(name = "users_birthday_idx", columnList = "birthday, id"),
+            @Index(name = "users_first_name_key_idx", columnList = "first_name_key, id"),
+            @Index(name = "users_last_name_key_idx", columnList = "last_name_key, id")},
+        uniqueConstraints = @UniqueConstraint(name = "users_email_key", columnNames = "email_key"))
 @Getter
 @Setter
-@AllArgsConstructor
 @NoArgsConstructor
 public class User {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private long id;
     
     @Email
@@ -49,6 +63,77 @@ public class User {
     private String address;
     
     private String phone;
+    
+    /**
+     * Incremented on every change of a stored user, it's exposed as the ETag.
+     */
+    @Version
+    private long version;
+    
+    /**
+     * The normalized email the database keeps unique, derived when the user is stored.
+     */
+    @Column(name = "email_key")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String emailKey;
+    
+    /**
+     * The normalized names searched by prefix on their indexes, derived when the user is stored.
+     */
+    @Column(name = "first_name_key")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String firstNameKey;
+    
+    @Column(name = "last_name_key")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String lastNameKey;
+
+    
+    public User(long id, String email, String firstName, String lastName, LocalDate birthday,
+            String address, String phone) {
+        this(id, email, firstName, lastName, birthday, address, phone, 0);
+    }
+
+    
+    public User(long id, String email, String firstName, String lastName, LocalDate birthday,
+            String address, String phone, long version) {
+        this.id = id;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.birthday = birthday;
+        this.address = address;
+        this.phone = phone;
+        this.version = version;
+    }
+    
+    
+    /**
+     * Emails are unique regardless of case and surrounding spaces. Returns null for null.
+     */
+    public static String emailKey(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    
+    /**
+     * Names are searched by prefix regardless of case and surrounding spaces. Returns null for null.
+     */
+    public static String nameKey(String name) {
+        return name == null ? null : name.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    
+    @PrePersist
+    @PreUpdate
+    protected void deriveKeys() {
+        emailKey = emailKey(email);
+        firstNameKey = nameKey(firstName);
+        lastNameKey = nameKey(lastName);
+    }
 
     
     @Override
@@ -0,0 +1,200 @@
+package solution.clear.test.entity;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Hand-written JSON codec of {@link User}, writing and reading the same JSON as the bean 
+ * serializers without reflection. Property names are encoded once and ISO dates of four
+ * digit years are formatted and parsed directly. Any other form of a value is left
+ * to the standard deserializers, so coercions and errors stay the same.
+ */
+
+public final class UserJsonModule extends SimpleModule {
+
+    private static final long serialVersionUID = -6313706431829542447L;
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString FIRST_NAME = new SerializedString("firstName");
+    private static final SerializableString LAST_NAME = new SerializedString("lastName");
+    private static final SerializableString BIRTHDAY = new SerializedString("birthday");
+    private static final SerializableString ADDRESS = new SerializedString("address");
+    private static final SerializableString PHONE = new SerializedString("phone");
+    private static final SerializableString VERSION = new SerializedString("version");
+
+
+    public UserJsonModule() {
+        super("UserJsonModule");
+        addSerializer(User.class, new Serializer());
+        addDeserializer(User.class, new Deserializer());
+    }
+
+
+    static class Serializer extends JsonSerializer<User> {
+
+        @Override
+        public void serialize(User user, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(user);
+            generator.writeFieldName(ID);
+            generator.writeNumber(user.getId());
+            writeString(generator, EMAIL, user.getEmail());
+            writeString(generator, FIRST_NAME, user.getFirstName());
+            writeString(generator, LAST_NAME, user.getLastName());
+            generator.writeFieldName(BIRTHDAY);
+            writeDate(generator, provider, user.getBirthday());
+            writeString(generator, ADDRESS, user.getAddress());
+            writeString(generator, PHONE, user.getPhone());
+            generator.writeFieldName(VERSION);
+            generator.writeNumber(user.getVersion());
+            generator.writeEndObject();
+        }
+
+
+        private static void writeString(JsonGenerator generator, SerializableString name, String value)
+                throws IOException {
+            generator.writeFieldName(name);
+            if (value == null)
+                generator.writeNull();
+            else
+                generator.writeString(value);
+        }
+
+
+        private static void writeDate(JsonGenerator generator, SerializerProvider provider, LocalDate date)
+                throws IOException {
+            if (date == null) {
+                generator.writeNull();
+                return;
+            }
+            int year = date.getYear();
+            if (year < 0 || year > 9999 || provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+                LocalDateSerializer.INSTANCE.serialize(date, generator, provider);
+                return;
+            }
+            char[] text = new char[10];
+            digits(text, 0, year, 4);
+            text[4] = '-';
+            digits(text, 5, date.getMonthValue(), 2);
+            text[7] = '-';
+            digits(text, 8, date.getDayOfMonth(), 2);
+            generator.writeString(text, 0, text.length);
+        }
+
+
+        private static void digits(char[] text, int offset, int value, int length) {
+            for (int i = offset + length - 1; i >= offset; i--) {
+                text[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+
+    }
+
+
+    static class Deserializer extends JsonDeserializer<User> {
+
+        @Override
+        public User deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT)
+                token = parser.nextToken();
+            else if (token != JsonToken.FIELD_NAME)
+                return (User) context.handleUnexpectedToken(User.class, parser);
+            User user = new User();
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id" -> user.setId(readLong(parser, context));
+                    case "email" -> user.setEmail(readString(parser, context));
+                    case "firstName" -> user.setFirstName(readString(parser, context));
+                    case "lastName" -> user.setLastName(readString(parser, context));
+                    case "birthday" -> user.setBirthday(readDate(parser, context));
+                    case "address" -> user.setAddress(readString(parser, context));
+                    case "phone" -> user.setPhone(readString(parser, context));
+                    case "version" -> user.setVersion(readLong(parser, context));
+                    default -> context.handleUnknownProperty(parser, this, User.class, name);
+                }
+            }
+            return user;
+        }
+
+
+        private static long readLong(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT 
+                    && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER)
+                return parser.getLongValue();
+            Long value = context.readValue(parser, Long.TYPE);
+            return value == null ? 0 : value;
+        }
+
+
+        private static String readString(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_STRING)
+                return parser.getText();
+            if (parser.currentToken() == JsonToken.VALUE_NULL)
+                return null;
+            return context.readValue(parser, String.class);
+        }
+
+
+        private static LocalDate readDate(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_STRING && parser.getTextLength() == 10) {
+                LocalDate date = parseDate(parser.getTextCharacters(), parser.getTextOffset());
+                if (date != null)
+                    return date;
+            }
+            if (parser.currentToken() == JsonToken.VALUE_NULL)
+                return null;
+            return LocalDateDeserializer.INSTANCE.deserialize(parser, context);
+        }
+
+
+        /**
+         * Parses yyyy-MM-dd, or returns null to leave anything else to the standard deserializer.
+         */
+        private static LocalDate parseDate(char[] text, int offset) {
+            if (text[offset + 4] != '-' || text[offset + 7] != '-')
+                return null;
+            int year = number(text, offset, 4);
+            int month = number(text, offset + 5, 2);
+            int day = number(text, offset + 8, 2);
+            if (year < 0 || month < 0 || day < 0)
+                return null;
+            try {
+                return LocalDate.of(year, month, day);
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+
+
+        private static int number(char[] text, int offset, int length) {
+            int value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                int digit = text[i] - '0';
+                if (digit < 0 || digit > 9)
+                    return -1;
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+    }
+
+}
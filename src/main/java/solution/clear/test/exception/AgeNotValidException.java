@@ -1,5 +1,9 @@
 package solution.clear.test.exception;
 
+/**
+ * Without a stack trace, only its message reaches the client.
+ * Batches report a rejected user with {@link #message(long)} and don't throw it.
+ */
 
 public class AgeNotValidException extends RuntimeException {
 
@@ -7,12 +11,17 @@ public class AgeNotValidException extends RuntimeException {
 
 
     public AgeNotValidException() {
-        super("Age not valid");
+        super("Age not valid", null, false, false);
     }
 
     
     public AgeNotValidException(long limit) {
-        super("Age not valid. Minimum value is " + limit + ".");
+        super(message(limit), null, false, false);
+    }
+
+
+    public static String message(long limit) {
+        return "Age not valid. Minimum value is " + limit + ".";
     }
 
 }
@@ -0,0 +1,18 @@
+package solution.clear.test.exception;
+
+
+public class CursorNotValidException extends RuntimeException {
+
+    private static final long serialVersionUID = 5812233470178539411L;
+
+
+    public CursorNotValidException() {
+        super("Cursor not valid");
+    }
+
+
+    public CursorNotValidException(String cursor) {
+        super("Cursor (" + cursor + ") not valid");
+    }
+
+}
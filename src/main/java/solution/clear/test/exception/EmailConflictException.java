@@ -0,0 +1,28 @@
+package solution.clear.test.exception;
+
+
+public class EmailConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = -1856236617318843174L;
+
+
+    public EmailConflictException() {
+        super("Email is already in use");
+    }
+
+
+    public EmailConflictException(String email) {
+        super(message(email));
+    }
+
+
+    public EmailConflictException(Throwable err) {
+        super("Email is already in use", err);
+    }
+
+
+    public static String message(String email) {
+        return "Email " + email + " is already in use";
+    }
+
+}
@@ -12,12 +12,22 @@ public class UserNotFoundException extends RuntimeException {
 
 
     public UserNotFoundException(long id) {
-        super("User (id=" + id + ") not found");
+        super(message(id));
+    }
+
+
+    public UserNotFoundException(String email) {
+        super("User (email=" + email + ") not found");
     }
 
 
     public UserNotFoundException(Throwable err) {
         super("User not found", err);
     }
+
+
+    public static String message(long id) {
+        return "User (id=" + id + ") not found";
+    }
     
 }
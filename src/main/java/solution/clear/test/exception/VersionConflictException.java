@@ -0,0 +1,23 @@
+package solution.clear.test.exception;
+
+
+public class VersionConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = -4170933620484319052L;
+
+
+    public VersionConflictException() {
+        super("User was modified concurrently");
+    }
+
+
+    public VersionConflictException(long id, long expected, long actual) {
+        super("User (id=" + id + ") version " + actual + " doesn't match expected " + expected);
+    }
+
+
+    public VersionConflictException(Throwable err) {
+        super("User was modified concurrently", err);
+    }
+
+}
@@ -0,0 +1,517 @@
+package solution.clear.test.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import solution.clear.test.entity.User;
+
+/**
+ * One segment of the columnar repository, holding the users whose id modulo the number
+ * of segments is its index. Users are kept in columns outside the heap: id, version,
+ * birthday as an epoch day, the first 8 bytes of both normalized names and the offset
+ * of a record in a blob of UTF-8 strings, which holds the lengths of the email, names,
+ * address and phone followed by their bytes.
+ * Rows are dense, a deleted row is filled with the last one, and are found by a column
+ * indexed by id divided by the number of segments. Records of replaced and deleted users
+ * are reclaimed once they take half of the blob.
+ * The repository guards every call with the lock of the segment.
+ */
+
+final class ColumnarSegment {
+
+    private static final int EMAIL = 0;
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 2;
+    private static final int ADDRESS = 3;
+    private static final int PHONE = 4;
+    private static final int STRINGS = 5;
+    private static final int RECORD_HEADER = STRINGS * Integer.BYTES;
+    private static final int NO_STRING = -1;
+    static final int NO_BIRTHDAY = Integer.MIN_VALUE;
+    private static final long MIN_COMPACTED_BLOB = 1 << 20;
+    private static final int SCAN_BATCH = 4096;
+    /**
+     * Ids divided by the number of segments must stay below it, so the column of rows by id is at most 8 GB.
+     */
+    static final long MAX_ID_INDEX = 1L << 31;
+
+    /**
+     * A row found by a search, ordered by a name or a birthday and then the id.
+     */
+    record Match(ColumnarSegment segment, int row, String name, long prefix, int birthday, long id) {
+
+        static final Comparator<Match> BY_NAME = Comparator.comparing(Match::name).thenComparingLong(Match::id);
+        static final Comparator<Match> BY_BIRTHDAY = Comparator.comparingInt(Match::birthday)
+                .thenComparingLong(Match::id);
+
+
+        User user() {
+            return segment.readUser(row);
+        }
+
+    }
+
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int stride;
+    private OffHeapBuffer idColumn;
+    private OffHeapBuffer versionColumn;
+    private OffHeapBuffer birthdayColumn;
+    private OffHeapBuffer recordColumn;
+    private OffHeapBuffer firstNameColumn;
+    private OffHeapBuffer lastNameColumn;
+    private OffHeapBuffer rowsById;
+    private OffHeapBuffer blob;
+    private int rows;
+    private long blobSize;
+    private long garbage;
+
+
+    ColumnarSegment(int stride) {
+        this.stride = stride;
+        clear();
+    }
+
+
+    void clear() {
+        idColumn = new OffHeapBuffer();
+        versionColumn = new OffHeapBuffer();
+        birthdayColumn = new OffHeapBuffer();
+        recordColumn = new OffHeapBuffer();
+        firstNameColumn = new OffHeapBuffer();
+        lastNameColumn = new OffHeapBuffer();
+        rowsById = new OffHeapBuffer();
+        blob = new OffHeapBuffer();
+        rows = 0;
+        blobSize = 0;
+        garbage = 0;
+    }
+
+
+    int rows() {
+        return rows;
+    }
+
+
+    long offHeapSize() {
+        return idColumn.capacity() + versionColumn.capacity() + birthdayColumn.capacity()
+                + recordColumn.capacity() + firstNameColumn.capacity() + lastNameColumn.capacity()
+                + rowsById.capacity() + blob.capacity();
+    }
+
+
+    /**
+     * Birthdays are kept as int epoch days, which cover about 5.8 million years around 1970.
+     */
+    static int epochDay(LocalDate birthday) {
+        if (birthday == null)
+            return NO_BIRTHDAY;
+        long day = birthday.toEpochDay();
+        if (day <= NO_BIRTHDAY || day > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Birthday out of the supported range: " + birthday);
+        return (int) day;
+    }
+
+
+    private long id(int row) {
+        return idColumn.getLong(row * 8L);
+    }
+
+
+    private int birthday(int row) {
+        return birthdayColumn.getInt(row * 4L);
+    }
+
+
+    private long record(int row) {
+        return recordColumn.getLong(row * 8L);
+    }
+
+
+    long version(int row) {
+        return versionColumn.getLong(row * 8L);
+    }
+
+
+    /**
+     * Returns -1 if the user isn't in the segment.
+     */
+    int row(long id) {
+        long index = id / stride;
+        return id <= 0 || index >= rowsById.capacity() / 4 ? -1 : rowsById.getInt(index * 4) - 1;
+    }
+
+
+    private int addRow(long id) {
+        if (id <= 0 || id / stride >= MAX_ID_INDEX)
+            throw new IllegalArgumentException("Id out of the range a segment indexes: " + id);
+        int row = rows++;
+        idColumn.ensureCapacity(rows * 8L);
+        versionColumn.ensureCapacity(rows * 8L);
+        birthdayColumn.ensureCapacity(rows * 4L);
+        recordColumn.ensureCapacity(rows * 8L);
+        firstNameColumn.ensureCapacity(rows * 8L);
+        lastNameColumn.ensureCapacity(rows * 8L);
+        rowsById.ensureCapacity((id / stride + 1) * 4);
+        idColumn.putLong(row * 8L, id);
+        rowsById.putInt(id / stride * 4, row + 1);
+        return row;
+    }
+
+
+    /**
+     * Adds a loaded user with its version.
+     */
+    void load(User user, int birthday) {
+        write(addRow(user.getId()), user, birthday, user.getVersion());
+    }
+
+
+    /**
+     * Stores the user in its row or a new one and returns its version,
+     * which continues the one of the user it replaces.
+     */
+    long put(User user, int birthday) {
+        int row = row(user.getId());
+        long version = 0;
+        if (row < 0) {
+            row = addRow(user.getId());
+        } else {
+            garbage += recordSize(record(row));
+            version = version(row) + 1;
+        }
+        write(row, user, birthday, version);
+        compactIfNeeded();
+        return version;
+    }
+
+
+    /**
+     * Removes the user, moving the last row into its place. Returns null if it isn't in the segment.
+     */
+    User remove(long id) {
+        int row = row(id);
+        if (row < 0)
+            return null;
+        User user = readUser(row);
+        garbage += recordSize(record(row));
+        int last = --rows;
+        if (row != last) {
+            long lastId = id(last);
+            idColumn.putLong(row * 8L, lastId);
+            versionColumn.putLong(row * 8L, version(last));
+            birthdayColumn.putInt(row * 4L, birthday(last));
+            recordColumn.putLong(row * 8L, record(last));
+            firstNameColumn.putLong(row * 8L, firstNameColumn.getLong(last * 8L));
+            lastNameColumn.putLong(row * 8L, lastNameColumn.getLong(last * 8L));
+            rowsById.putInt(lastId / stride * 4, row + 1);
+        }
+        rowsById.putInt(id / stride * 4, 0);
+        compactIfNeeded();
+        return user;
+    }
+
+
+    private void write(int row, User user, int birthday, long version) {
+        versionColumn.putLong(row * 8L, version);
+        birthdayColumn.putInt(row * 4L, birthday);
+        firstNameColumn.putLong(row * 8L, namePrefix(User.nameKey(user.getFirstName())));
+        lastNameColumn.putLong(row * 8L, namePrefix(User.nameKey(user.getLastName())));
+        recordColumn.putLong(row * 8L, writeRecord(user));
+    }
+
+
+    /**
+     * Packs the first 8 UTF-8 bytes of the normalized name, padded with zeros, into a long.
+     */
+    static long namePrefix(String name) {
+        if (name == null)
+            return 0;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; i++)
+            prefix = prefix << 8 | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        return prefix;
+    }
+
+
+    /**
+     * Appends the strings of the user to the blob, records start at offsets aligned to ints.
+     */
+    private long writeRecord(User user) {
+        String[] strings = {user.getEmail(), user.getFirstName(), user.getLastName(), user.getAddress(),
+                user.getPhone()};
+        byte[][] bytes = new byte[STRINGS][];
+        int size = RECORD_HEADER;
+        for (int i = 0; i < STRINGS; i++) {
+            if (strings[i] != null) {
+                bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+                size += bytes[i].length;
+            }
+        }
+        long offset = blobSize;
+        blob.ensureCapacity(offset + size);
+        long position = offset + RECORD_HEADER;
+        for (int i = 0; i < STRINGS; i++) {
+            blob.putInt(offset + i * 4L, bytes[i] == null ? NO_STRING : bytes[i].length);
+            if (bytes[i] != null) {
+                blob.put(position, bytes[i], 0, bytes[i].length);
+                position += bytes[i].length;
+            }
+        }
+        blobSize = offset + align(size);
+        return offset;
+    }
+
+
+    private static long align(long size) {
+        return size + 3 & ~3L;
+    }
+
+
+    private long recordSize(long record) {
+        long size = RECORD_HEADER;
+        for (int i = 0; i < STRINGS; i++)
+            size += Math.max(0, blob.getInt(record + i * 4L));
+        return align(size);
+    }
+
+
+    private long stringPosition(long record, int index) {
+        long position = record + RECORD_HEADER;
+        for (int i = 0; i < index; i++)
+            position += Math.max(0, blob.getInt(record + i * 4L));
+        return position;
+    }
+
+
+    private String readField(long record, int index) {
+        int length = blob.getInt(record + index * 4L);
+        if (length == NO_STRING)
+            return null;
+        byte[] bytes = new byte[length];
+        blob.get(stringPosition(record, index), bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    String email(int row) {
+        return readField(record(row), EMAIL);
+    }
+
+
+    /**
+     * Copies the record at once and decodes the strings from the copy.
+     */
+    User readUser(int row) {
+        long record = record(row);
+        int[] lengths = new int[STRINGS];
+        int size = 0;
+        for (int i = 0; i < STRINGS; i++) {
+            lengths[i] = blob.getInt(record + i * 4L);
+            size += Math.max(0, lengths[i]);
+        }
+        byte[] bytes = new byte[size];
+        blob.get(record + RECORD_HEADER, bytes, 0, size);
+        String[] strings = new String[STRINGS];
+        int position = 0;
+        for (int i = 0; i < STRINGS; i++) {
+            if (lengths[i] != NO_STRING) {
+                strings[i] = new String(bytes, position, lengths[i], StandardCharsets.UTF_8);
+                position += lengths[i];
+            }
+        }
+        int birthday = birthday(row);
+        return new User(id(row), strings[EMAIL], strings[FIRST_NAME], strings[LAST_NAME],
+                birthday == NO_BIRTHDAY ? null : LocalDate.ofEpochDay(birthday), strings[ADDRESS], strings[PHONE],
+                version(row));
+    }
+
+
+    /**
+     * Copies the live records to a new blob once the dead ones take half of it.
+     */
+    private void compactIfNeeded() {
+        if (garbage * 2 < blobSize || blobSize < MIN_COMPACTED_BLOB)
+            return;
+        OffHeapBuffer compacted = new OffHeapBuffer();
+        compacted.ensureCapacity(blobSize - garbage);
+        byte[] bytes = new byte[0];
+        long size = 0;
+        for (int row = 0; row < rows; row++) {
+            long record = record(row);
+            int length = (int) recordSize(record);
+            if (bytes.length < length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            blob.get(record, bytes, 0, length);
+            compacted.put(size, bytes, 0, length);
+            recordColumn.putLong(row * 8L, size);
+            size += length;
+        }
+        blob = compacted;
+        blobSize = size;
+        garbage = 0;
+    }
+
+
+    /**
+     * Returns the users of the segment ordered by id, walking the column of rows by id.
+     */
+    List<User> findAll() {
+        List<User> result = new ArrayList<>(rows);
+        long ids = rowsById.capacity() / 4;
+        for (long index = 0; index < ids && result.size() < rows; index++) {
+            int row = rowsById.getInt(index * 4) - 1;
+            if (row >= 0)
+                result.add(readUser(row));
+        }
+        return result;
+    }
+
+
+    /**
+     * Scans the birthday column and reads the matching users in id order.
+     */
+    List<User> findByBirthday(long from, long to) {
+        int[] birthdays = new int[SCAN_BATCH];
+        long[] ids = new long[16];
+        int count = 0;
+        for (int start = 0; start < rows; start += SCAN_BATCH) {
+            int batch = Math.min(SCAN_BATCH, rows - start);
+            birthdayColumn.getInts(start * 4L, birthdays, 0, batch);
+            for (int i = 0; i < batch; i++) {
+                int birthday = birthdays[i];
+                if (birthday != NO_BIRTHDAY && birthday >= from && birthday <= to) {
+                    if (count == ids.length)
+                        ids = Arrays.copyOf(ids, count * 2);
+                    ids[count++] = id(start + i);
+                }
+            }
+        }
+        Arrays.sort(ids, 0, count);
+        List<User> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add(readUser(row(ids[i])));
+        return result;
+    }
+
+
+    /**
+     * Scans the birthday column keeping the first limit rows after the cursor in a bounded heap,
+     * returns them ordered by (birthday, id).
+     */
+    List<Match> findPage(long from, long to, UserCursor after, int limit) {
+        int[] birthdays = new int[SCAN_BATCH];
+        PriorityQueue<Match> best = new PriorityQueue<>(Match.BY_BIRTHDAY.reversed());
+        for (int start = 0; start < rows; start += SCAN_BATCH) {
+            int batch = Math.min(SCAN_BATCH, rows - start);
+            birthdayColumn.getInts(start * 4L, birthdays, 0, batch);
+            for (int i = 0; i < batch; i++) {
+                int birthday = birthdays[i];
+                if (birthday == NO_BIRTHDAY || birthday < from || birthday > to)
+                    continue;
+                int row = start + i;
+                long id = id(row);
+                if (after != null) {
+                    int result = Long.compare(birthday, after.birthday().toEpochDay());
+                    if (result < 0 || result == 0 && id <= after.id())
+                        continue;
+                }
+                if (best.size() == limit) {
+                    Match worst = best.peek();
+                    if (birthday > worst.birthday() || birthday == worst.birthday() && id > worst.id())
+                        continue;
+                    best.poll();
+                }
+                best.add(new Match(this, row, null, 0, birthday, id));
+            }
+        }
+        List<Match> page = new ArrayList<>(best);
+        page.sort(Match.BY_BIRTHDAY);
+        return page;
+    }
+
+
+    /**
+     * Scans the name prefix columns and decodes only the names whose first 8 bytes
+     * match the key and, once limit names are found, don't already sort after all of them.
+     * Returns the matches ordered by the matching name and id.
+     */
+    List<Match> findByNamePrefix(String key, int limit) {
+        int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+        long keyBits = namePrefix(key);
+        long mask = keyLength >= Long.BYTES ? -1L : ~(-1L >>> keyLength * 8);
+        PriorityQueue<Match> best = new PriorityQueue<>(Match.BY_NAME.reversed());
+        long[] firstNames = new long[SCAN_BATCH];
+        long[] lastNames = new long[SCAN_BATCH];
+        for (int start = 0; start < rows; start += SCAN_BATCH) {
+            int count = Math.min(SCAN_BATCH, rows - start);
+            firstNameColumn.getLongs(start * 8L, firstNames, 0, count);
+            lastNameColumn.getLongs(start * 8L, lastNames, 0, count);
+            for (int i = 0; i < count; i++) {
+                boolean first = (firstNames[i] & mask) == keyBits;
+                boolean last = (lastNames[i] & mask) == keyBits;
+                if (!first && !last)
+                    continue;
+                if (best.size() == limit) {
+                    long worst = best.peek().prefix();
+                    first &= comparePrefixes(firstNames[i], worst) <= 0;
+                    last &= comparePrefixes(lastNames[i], worst) <= 0;
+                }
+                if (!first && !last)
+                    continue;
+                int row = start + i;
+                long record = record(row);
+                String name = first ? matchName(record, FIRST_NAME, key) : null;
+                long namePrefix = firstNames[i];
+                String lastName = last ? matchName(record, LAST_NAME, key) : null;
+                if (name == null || lastName != null && lastName.compareTo(name) < 0) {
+                    name = lastName;
+                    namePrefix = lastNames[i];
+                }
+                if (name == null)
+                    continue;
+                Match match = new Match(this, row, name, namePrefix, 0, id(row));
+                if (best.size() < limit) {
+                    best.add(match);
+                } else if (Match.BY_NAME.compare(match, best.peek()) < 0) {
+                    best.poll();
+                    best.add(match);
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(Match.BY_NAME);
+        return matches;
+    }
+
+
+    /**
+     * Compares names by their packed first bytes, returns 0 if they can't tell the order.
+     * Byte order of UTF-8 is the order of strings unless a supplementary character meets
+     * one from U+E000, which starts with a byte from 0xEE.
+     */
+    private static int comparePrefixes(long prefix, long other) {
+        if (prefix == other)
+            return 0;
+        int shift = 56 - (Long.numberOfLeadingZeros(prefix ^ other) & ~7);
+        if ((prefix >>> shift & 0xFF) >= 0xEE || (other >>> shift & 0xFF) >= 0xEE)
+            return 0;
+        return Long.compareUnsigned(prefix, other);
+    }
+
+
+    /**
+     * Returns the normalized name if it starts with the key, otherwise null.
+     */
+    private String matchName(long record, int index, String key) {
+        String name = User.nameKey(readField(record, index));
+        return name != null && name.startsWith(key) ? name : null;
+    }
+
+}
@@ -0,0 +1,537 @@
+package solution.clear.test.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
+
+/**
+ * Repository of the columnar profile, keeping users outside the heap in segments
+ * of columns, see {@link ColumnarSegment}. Users are materialized only when they are returned,
+ * so the heap holds a few dozen buffers instead of eight objects per user and garbage
+ * collections have nothing to trace.
+ * A user belongs to the segment of its id modulo the number of segments, each segment
+ * has its own lock, so writes of different users rarely wait for each other.
+ * Normalized emails are mapped to ids by an {@link EmailIndex}, locked inside the segments.
+ * Searches scan the segments in parallel on the common fork-join pool, each one the columns
+ * it needs, and merge their results in the order of a single scan.
+ * Calls that span segments, batches and searches, lock all of them in order, so a batch
+ * becomes visible as a whole. Users are kept only in memory, the journal is not supported.
+ */
+
+@Service
+@Profile("columnar")
+public class ColumnarUserRepository implements UserRepository {
+
+    /**
+     * Loaded ids may reach this many times the number of users, or of MIN_ID_RANGE if it's larger.
+     */
+    private static final long MAX_SPARSENESS = 16;
+    private static final long MIN_ID_RANGE = 1 << 20;
+
+    private final ColumnarSegment[] segments;
+    private final EmailIndex emails = new EmailIndex();
+    private final AtomicLong ids = new AtomicLong();
+
+
+    public ColumnarUserRepository() {
+        this(0);
+    }
+
+
+    /**
+     * With 0 segments there is one per available processor.
+     */
+    @Autowired
+    public ColumnarUserRepository(@Value("${repository.columnar.segments:0}") int segments) {
+        int count = segments > 0 ? segments : Runtime.getRuntime().availableProcessors();
+        this.segments = new ColumnarSegment[count];
+        for (int i = 0; i < count; i++)
+            this.segments[i] = new ColumnarSegment(count);
+    }
+
+
+    private ColumnarSegment segment(long id) {
+        return segments[(int) Math.floorMod(id, (long) segments.length)];
+    }
+
+
+    private void readLockAll() {
+        for (ColumnarSegment segment : segments)
+            segment.lock.readLock().lock();
+    }
+
+
+    private void readUnlockAll() {
+        for (int i = segments.length - 1; i >= 0; i--)
+            segments[i].lock.readLock().unlock();
+    }
+
+
+    private void writeLockAll() {
+        for (ColumnarSegment segment : segments)
+            segment.lock.writeLock().lock();
+    }
+
+
+    private void writeUnlockAll() {
+        for (int i = segments.length - 1; i >= 0; i--)
+            segments[i].lock.writeLock().unlock();
+    }
+
+
+    /**
+     * Runs the scan on every segment in parallel. Must be called under the read locks
+     * of all segments, which the caller holds while the pool threads read.
+     */
+    private <T> List<List<T>> scan(Function<ColumnarSegment, List<T>> scan) {
+        return Arrays.stream(segments).parallel().map(scan).toList();
+    }
+
+
+    /**
+     * Merges the sorted results of the segments into the first limit of them.
+     */
+    private static <T> List<T> merge(List<List<T>> results, Comparator<T> order, int limit) {
+        record Head<T>(T value, int list, int index) {}
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(
+                (head, other) -> order.compare(head.value(), other.value()));
+        int size = 0;
+        for (int i = 0; i < results.size(); i++) {
+            size += results.get(i).size();
+            if (!results.get(i).isEmpty())
+                heads.add(new Head<>(results.get(i).get(0), i, 0));
+        }
+        List<T> merged = new ArrayList<>(Math.min(size, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Head<T> head = heads.poll();
+            merged.add(head.value());
+            List<T> list = results.get(head.list());
+            int next = head.index() + 1;
+            if (next < list.size())
+                heads.add(new Head<>(list.get(next), head.list(), next));
+        }
+        return merged;
+    }
+
+
+    /**
+     * Replaces all users, which must have distinct positive ids. It's meant for loading stored data.
+     * Of users loaded with the same email only the first by id is found by it.
+     * The segments index rows by id, so ids far beyond the number of users are rejected
+     * rather than sizing the index by them.
+     */
+    public void set(Collection<User> newUsers) {
+        set(newUsers, 0);
+    }
+
+
+    /**
+     * Also moves the id sequence up to lastId, so that ids of deleted users aren't reused.
+     */
+    public void set(Collection<User> newUsers, long lastId) {
+        User[] byId = newUsers.toArray(User[]::new);
+        Arrays.parallelSort(byId, Comparator.comparingLong(User::getId));
+        for (int i = 0; i < byId.length; i++)
+            if (byId[i].getId() <= 0 || i > 0 && byId[i].getId() == byId[i - 1].getId())
+                throw new IllegalArgumentException("Ids must be distinct and positive: " + byId[i].getId());
+        long loadedId = byId.length == 0 ? 0 : byId[byId.length - 1].getId();
+        // new users continue from the larger of both, so it bounds the index too
+        long maxId = Math.max(lastId, loadedId);
+        if (maxId > Math.max(byId.length, MIN_ID_RANGE) * MAX_SPARSENESS
+                || maxId / segments.length >= ColumnarSegment.MAX_ID_INDEX)
+            throw new IllegalArgumentException("Ids are too sparse to index, the largest is " + maxId 
+                    + " for " + byId.length + " users");
+        int[] birthdays = new int[byId.length];
+        for (int i = 0; i < byId.length; i++)
+            birthdays[i] = ColumnarSegment.epochDay(byId[i].getBirthday());
+        writeLockAll();
+        try {
+            for (ColumnarSegment segment : segments)
+                segment.clear();
+            emails.clear();
+            ids.accumulateAndGet(maxId, Math::max);
+            for (int i = 0; i < byId.length; i++) {
+                User user = byId[i];
+                segment(user.getId()).load(user, birthdays[i]);
+                String key = User.emailKey(user.getEmail());
+                if (key != null)
+                    emails.claim(key, user.getId());
+            }
+        } finally {
+            writeUnlockAll();
+        }
+    }
+
+
+    public int size() {
+        readLockAll();
+        try {
+            int rows = 0;
+            for (ColumnarSegment segment : segments)
+                rows += segment.rows();
+            return rows;
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+
+    /**
+     * Bytes held outside the heap by the segments and the email index.
+     */
+    public long offHeapSize() {
+        readLockAll();
+        try {
+            long size = emails.offHeapSize();
+            for (ColumnarSegment segment : segments)
+                size += segment.offHeapSize();
+            return size;
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+
+    /**
+     * Takes the next id for a new user, together with its email if it has one.
+     * @throws EmailConflictException if another user has the email
+     */
+    private long nextId(User user) {
+        ColumnarSegment.epochDay(user.getBirthday());
+        String key = User.emailKey(user.getEmail());
+        return key == null ? ids.incrementAndGet() : emails.claimNew(key, ids, user.getEmail());
+    }
+
+
+    /**
+     * Stores a user that took its id and email in {@link #nextId(User)}, the email is given back
+     * if the user can't be stored. Must be called under the write lock of its segment.
+     */
+    private void putNew(User user) {
+        try {
+            put(user);
+        } catch (RuntimeException e) {
+            String key = User.emailKey(user.getEmail());
+            if (key != null)
+                emails.release(key, user.getId());
+            throw e;
+        }
+    }
+
+
+    /**
+     * Stores the user in its row or a new one. Must be called under the write lock of its segment.
+     * The version of the user continues the one of the user it replaces.
+     * @throws EmailConflictException before any change if another user has the email
+     */
+    protected void put(User user) {
+        ColumnarSegment segment = segment(user.getId());
+        int birthday = ColumnarSegment.epochDay(user.getBirthday());
+        String key = User.emailKey(user.getEmail());
+        int row = segment.row(user.getId());
+        String previous = row < 0 ? null : User.emailKey(segment.email(row));
+        if (key != null && !key.equals(previous) && !emails.claim(key, user.getId()))
+            throw new EmailConflictException(user.getEmail());
+        if (previous != null && !previous.equals(key))
+            emails.release(previous, user.getId());
+        user.setVersion(segment.put(user, birthday));
+    }
+
+
+    /**
+     * Removes the user. Must be called under the write lock of its segment.
+     */
+    protected User remove(long id) {
+        User user = segment(id).remove(id);
+        String key = user == null ? null : User.emailKey(user.getEmail());
+        if (key != null)
+            emails.release(key, id);
+        return user;
+    }
+
+
+    /**
+     * Stores the user if it exists. Must be called under the write lock of its segment.
+     */
+    protected User replace(User user) {
+        if (segment(user.getId()).row(user.getId()) < 0)
+            return null;
+        put(user);
+        return user;
+    }
+
+
+    @Override
+    public boolean exists(long id) {
+        ColumnarSegment segment = segment(id);
+        segment.lock.readLock().lock();
+        try {
+            return segment.row(id) >= 0;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+
+    @Override
+    public boolean notExists(long id) {
+        return !exists(id);
+    }
+
+
+    @Override
+    public Optional<User> findById(long id) {
+        ColumnarSegment segment = segment(id);
+        segment.lock.readLock().lock();
+        try {
+            int row = segment.row(id);
+            return row < 0 ? Optional.empty() : Optional.of(segment.readUser(row));
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * The index is read before the segment is locked, so the user is checked to still have the email.
+     */
+    @Override
+    public Optional<User> findByEmail(String email) {
+        String key = User.emailKey(email);
+        long id = key == null ? 0 : emails.find(key);
+        if (id == 0)
+            return Optional.empty();
+        ColumnarSegment segment = segment(id);
+        segment.lock.readLock().lock();
+        try {
+            int row = segment.row(id);
+            if (row < 0)
+                return Optional.empty();
+            User user = segment.readUser(row);
+            return key.equals(User.emailKey(user.getEmail())) ? Optional.of(user) : Optional.empty();
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+
+    @Override
+    public long count() {
+        return size();
+    }
+
+
+    @Override
+    public List<User> findAll() {
+        readLockAll();
+        try {
+            return merge(scan(ColumnarSegment::findAll), Comparator.comparingLong(User::getId), Integer.MAX_VALUE);
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+
+    @Override
+    public User save(User user) {
+        ColumnarSegment segment = segment(user.getId());
+        segment.lock.writeLock().lock();
+        try {
+            if (segment.row(user.getId()) >= 0) {
+                put(user);
+                return user;
+            }
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+        user.setId(0);
+        long id = nextId(user);
+        segment = segment(id);
+        segment.lock.writeLock().lock();
+        try {
+            user.setId(id);
+            putNew(user);
+            return user;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+
+    @Override
+    public User update(User user) {
+        ColumnarSegment segment = segment(user.getId());
+        segment.lock.writeLock().lock();
+        try {
+            return replace(user);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+
+    @Override
+    public User update(User user, long expectedVersion) {
+        ColumnarSegment segment = segment(user.getId());
+        segment.lock.writeLock().lock();
+        try {
+            int row = segment.row(user.getId());
+            if (row < 0)
+                return null;
+            long current = segment.version(row);
+            if (current != expectedVersion)
+                throw new VersionConflictException(user.getId(), expectedVersion, current);
+            put(user);
+            return user;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+
+    @Override
+    public User deleteById(long id) {
+        ColumnarSegment segment = segment(id);
+        segment.lock.writeLock().lock();
+        try {
+            return remove(id);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Ids are given only to the users that are saved.
+     */
+    @Override
+    public List<User> saveAll(List<User> newUsers) {
+        List<User> result = new ArrayList<>(newUsers.size());
+        writeLockAll();
+        try {
+            for (User user : newUsers) {
+                user.setId(0);
+                long id;
+                try {
+                    id = nextId(user);
+                } catch (EmailConflictException e) {
+                    result.add(null);
+                    continue;
+                }
+                user.setId(id);
+                putNew(user);
+                result.add(user);
+            }
+        } finally {
+            writeUnlockAll();
+        }
+        return result;
+    }
+
+
+    @Override
+    public List<User> updateAll(List<User> updatedUsers) {
+        List<User> result = new ArrayList<>(updatedUsers.size());
+        writeLockAll();
+        try {
+            for (User user : updatedUsers) {
+                try {
+                    result.add(replace(user));
+                } catch (EmailConflictException e) {
+                    result.add(null);
+                }
+            }
+        } finally {
+            writeUnlockAll();
+        }
+        return result;
+    }
+
+
+    @Override
+    public List<User> deleteAllById(List<Long> deletedIds) {
+        List<User> result = new ArrayList<>(deletedIds.size());
+        writeLockAll();
+        try {
+            for (long id : deletedIds)
+                result.add(remove(id));
+        } finally {
+            writeUnlockAll();
+        }
+        return result;
+    }
+
+
+    /**
+     * Each segment keeps its first limit matches, the first limit of all of them are read.
+     */
+    @Override
+    public List<User> findByNamePrefix(String prefix, int limit) {
+        if (limit <= 0)
+            return new ArrayList<>();
+        String key = User.nameKey(prefix);
+        readLockAll();
+        try {
+            List<ColumnarSegment.Match> matches = merge(scan(segment -> segment.findByNamePrefix(key, limit)),
+                    ColumnarSegment.Match.BY_NAME, limit);
+            List<User> result = new ArrayList<>(matches.size());
+            for (ColumnarSegment.Match match : matches)
+                result.add(match.user());
+            return result;
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+
+    @Override
+    public List<User> findByBirthdayAfterAndBefore(LocalDate from, LocalDate to) {
+        long low = from.toEpochDay();
+        long high = to.toEpochDay();
+        readLockAll();
+        try {
+            return merge(scan(segment -> segment.findByBirthday(low, high)), Comparator.comparingLong(User::getId),
+                    Integer.MAX_VALUE);
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+
+    /**
+     * Each segment keeps its first limit rows after the cursor, the first limit of all of them are read.
+     */
+    @Override
+    public List<User> findPage(LocalDate from, LocalDate to, UserCursor after, int limit) {
+        if (limit <= 0)
+            return new ArrayList<>();
+        long low = from.toEpochDay();
+        long high = to.toEpochDay();
+        readLockAll();
+        try {
+            List<ColumnarSegment.Match> page = merge(scan(segment -> segment.findPage(low, high, after, limit)),
+                    ColumnarSegment.Match.BY_BIRTHDAY, limit);
+            List<User> result = new ArrayList<>(page.size());
+            for (ColumnarSegment.Match match : page)
+                result.add(match.user());
+            return result;
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+}
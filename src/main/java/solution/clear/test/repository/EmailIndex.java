@@ -0,0 +1,257 @@
+package solution.clear.test.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import solution.clear.test.exception.EmailConflictException;
+
+/**
+ * Unique normalized emails of the columnar repository, mapped to the ids of their users.
+ * An open addressing table outside the heap, whose slots hold the id, 0 if the slot is free,
+ * the hash of the email and the length and offset of its bytes in a blob of its own,
+ * so it never reads the segments and can be locked inside their locks.
+ * Bytes of released emails are reclaimed once they take half of the blob.
+ */
+
+final class EmailIndex {
+
+    private static final int SLOT = 24;
+    private static final int MIN_BITS = 12;
+    private static final long MIN_COMPACTED_BLOB = 1 << 20;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private OffHeapBuffer slots;
+    private OffHeapBuffer blob;
+    private int bits;
+    private int count;
+    private long blobSize;
+    private long garbage;
+
+
+    EmailIndex() {
+        clear();
+    }
+
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            reset(MIN_BITS);
+            blob = new OffHeapBuffer();
+            blobSize = 0;
+            garbage = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void reset(int bits) {
+        slots = new OffHeapBuffer();
+        slots.ensureCapacity((long) SLOT << bits);
+        this.bits = bits;
+        count = 0;
+    }
+
+
+    long offHeapSize() {
+        lock.readLock().lock();
+        try {
+            return slots.capacity() + blob.capacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key) * 0x9E3779B9;
+        return hash ^ hash >>> 16;
+    }
+
+
+    private int home(int hash) {
+        return hash >>> 32 - bits;
+    }
+
+
+    private long id(int slot) {
+        return slots.getLong((long) slot * SLOT);
+    }
+
+
+    /**
+     * Returns the slot holding the key, or the free slot ending its cluster as -1 - slot.
+     */
+    private int find(byte[] key, int hash) {
+        int mask = (1 << bits) - 1;
+        for (int slot = home(hash);; slot = slot + 1 & mask) {
+            long offset = (long) slot * SLOT;
+            if (slots.getLong(offset) == 0)
+                return -1 - slot;
+            if (slots.getInt(offset + 8) == hash && slots.getInt(offset + 12) == key.length) {
+                byte[] stored = new byte[key.length];
+                blob.get(slots.getLong(offset + 16), stored, 0, key.length);
+                if (Arrays.equals(stored, key))
+                    return slot;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the id of the user with the normalized email or 0.
+     */
+    long find(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = find(bytes, hash(bytes));
+            return slot < 0 ? 0 : id(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gives the normalized email to the id unless another id has it.
+     */
+    boolean claim(String key, long id) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            return claim(bytes, id, null) == id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Takes the next id of the sequence and gives it the normalized email at once,
+     * so that no id is used up by an email that is taken.
+     * @throws EmailConflictException if another id has the email
+     */
+    long claimNew(String key, AtomicLong ids, String email) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            long owner = claim(bytes, 0, ids);
+            if (owner == 0)
+                throw new EmailConflictException(email);
+            return owner;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the id that has the key after the call, or 0 if ids is given and the key is taken.
+     */
+    private long claim(byte[] key, long id, AtomicLong ids) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0)
+            return ids == null ? id(slot) : 0;
+        if (ids != null)
+            id = ids.incrementAndGet();
+        if (++count * 2 > 1 << bits) {
+            grow();
+            slot = find(key, hash);
+        }
+        blob.ensureCapacity(blobSize + key.length);
+        blob.put(blobSize, key, 0, key.length);
+        long offset = (long) (-1 - slot) * SLOT;
+        slots.putLong(offset, id);
+        slots.putInt(offset + 8, hash);
+        slots.putInt(offset + 12, key.length);
+        slots.putLong(offset + 16, blobSize);
+        blobSize += key.length;
+        return id;
+    }
+
+
+    private void grow() {
+        OffHeapBuffer old = slots;
+        int size = 1 << bits;
+        int claimed = count;
+        reset(bits + 1);
+        count = claimed;
+        int mask = (1 << bits) - 1;
+        for (int slot = 0; slot < size; slot++) {
+            long from = (long) slot * SLOT;
+            if (old.getLong(from) == 0)
+                continue;
+            int free = home(old.getInt(from + 8));
+            while (id(free) != 0)
+                free = free + 1 & mask;
+            long to = (long) free * SLOT;
+            slots.putLong(to, old.getLong(from));
+            slots.putInt(to + 8, old.getInt(from + 8));
+            slots.putInt(to + 12, old.getInt(from + 12));
+            slots.putLong(to + 16, old.getLong(from + 16));
+        }
+    }
+
+
+    /**
+     * Frees the normalized email if the id has it. The following slots of its cluster
+     * that may take the freed one are shifted back, so lookups still stop only at free slots.
+     */
+    void release(String key, long id) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            int slot = find(bytes, hash(bytes));
+            if (slot < 0 || id(slot) != id)
+                return;
+            count--;
+            garbage += bytes.length;
+            int mask = (1 << bits) - 1;
+            for (int next = slot + 1 & mask; id(next) != 0; next = next + 1 & mask) {
+                long from = (long) next * SLOT;
+                if ((next - home(slots.getInt(from + 8)) & mask) >= (next - slot & mask)) {
+                    long to = (long) slot * SLOT;
+                    slots.putLong(to, slots.getLong(from));
+                    slots.putInt(to + 8, slots.getInt(from + 8));
+                    slots.putInt(to + 12, slots.getInt(from + 12));
+                    slots.putLong(to + 16, slots.getLong(from + 16));
+                    slot = next;
+                }
+            }
+            slots.putLong((long) slot * SLOT, 0);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void compactIfNeeded() {
+        if (garbage * 2 < blobSize || blobSize < MIN_COMPACTED_BLOB)
+            return;
+        OffHeapBuffer compacted = new OffHeapBuffer();
+        compacted.ensureCapacity(blobSize - garbage);
+        long size = 0;
+        byte[] bytes = new byte[0];
+        for (int slot = 0; slot < 1 << bits; slot++) {
+            long offset = (long) slot * SLOT;
+            if (slots.getLong(offset) == 0)
+                continue;
+            int length = slots.getInt(offset + 12);
+            if (bytes.length < length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            blob.get(slots.getLong(offset + 16), bytes, 0, length);
+            compacted.put(size, bytes, 0, length);
+            slots.putLong(offset + 16, size);
+            size += length;
+        }
+        blob = compacted;
+        blobSize = size;
+        garbage = 0;
+    }
+
+}
@@ -0,0 +1,629 @@
+package solution.clear.test.repository;
+
+import jakarta.annotation.PostConstruct;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
+
+
+/**
+ * In-memory repository, used unless the jpa or the columnar profile is active.
+ * Users are kept in immutable versions, each holding a hash trie by id for lookups in O(1),
+ * a map sorted by id for listing, an index ordered by (birthday, id) for range searches
+ * in O(log n + k) and keyset pages and an index of normalized first and last names for prefix searches.
+ * Writers are serialized, build the next version by path copying and publish it
+ * at once when they release the lock, so a batch becomes visible as a whole.
+ * Readers never lock and each call sees one consistent version,
+ * so stored users must be replaced rather than mutated.
+ * Emails are indexed in a concurrent map from normalized email to id, changed only
+ * by the writers, so a duplicate is found by one map read and a lookup by email
+ * never locks, its result is checked against the version.
+ * Names and addresses of stored users are replaced by canonical instances
+ * of a {@link StringDictionary}, so repeated values are kept once.
+ * The optional journal gets the changes in the same order as the memory. When it syncs
+ * every write, a version is published only once its changes are durable, and changes
+ * the journal failed to write are dropped.
+ */
+
+
+@Service
+@Profile("!jpa & !columnar")
+public class InMemoryUserRepository implements UserRepository {
+
+    private static final Comparator<User> BY_ID = Comparator.comparingLong(User::getId);
+    private static final Comparator<User> BY_BIRTHDAY = Comparator.comparing(User::getBirthday).thenComparing(BY_ID);
+    private static final int DICTIONARY_SIZE = 1 << 16;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Version version = Version.EMPTY;
+    private Version draft = Version.EMPTY;
+    private long position;
+    /**
+     * Journal position of the published version, a writer whose changes were already
+     * published with later ones doesn't publish its older version.
+     */
+    private long publishedPosition;
+    private boolean discarded;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final ConcurrentHashMap<String, Long> emails = new ConcurrentHashMap<>();
+    private final StringDictionary dictionary = new StringDictionary(DICTIONARY_SIZE);
+
+    @Autowired(required = false)
+    private UserJournal journal;
+
+
+    private record BirthdayKey(LocalDate birthday, long id) implements Comparable<BirthdayKey> {
+
+        static BirthdayKey of(User user) {
+            return new BirthdayKey(user.getBirthday(), user.getId());
+        }
+
+
+        static BirthdayKey of(UserCursor cursor) {
+            return new BirthdayKey(cursor.birthday(), cursor.id());
+        }
+
+
+        @Override
+        public int compareTo(BirthdayKey other) {
+            int result = birthday.compareTo(other.birthday);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+    }
+
+
+    /**
+     * A normalized first or last name of a user, a user has a key for each distinct one.
+     * Stored keys take their names from the dictionary, so users with the same name share one.
+     */
+    private record NameKey(String name, long id) implements Comparable<NameKey> {
+
+        /**
+         * Keys to look up or remove, equal to the stored ones.
+         */
+        static List<NameKey> of(User user) {
+            return of(user, UnaryOperator.identity());
+        }
+
+
+        static List<NameKey> of(User user, UnaryOperator<String> canonical) {
+            String first = canonical.apply(User.nameKey(user.getFirstName()));
+            String last = canonical.apply(User.nameKey(user.getLastName()));
+            List<NameKey> keys = new ArrayList<>(2);
+            if (first != null)
+                keys.add(new NameKey(first, user.getId()));
+            if (last != null && !last.equals(first))
+                keys.add(new NameKey(last, user.getId()));
+            return keys;
+        }
+
+
+        @Override
+        public int compareTo(NameKey other) {
+            int result = name.compareTo(other.name);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+    }
+
+
+    private record Version(PersistentHashMap<User> byId,
+            PersistentSortedMap<Long, User> users,
+            PersistentSortedMap<BirthdayKey, User> birthdays,
+            PersistentSortedMap<NameKey, User> names) {
+
+        static final Version EMPTY = new Version(PersistentHashMap.empty(User::getId), PersistentSortedMap.empty(),
+                PersistentSortedMap.empty(), PersistentSortedMap.empty());
+
+
+        User get(long id) {
+            return byId.get(id);
+        }
+
+
+        Version put(User user, List<NameKey> nameKeys) {
+            User previous = byId.get(user.getId());
+            PersistentSortedMap<BirthdayKey, User> index = previous == null ? birthdays
+                    : birthdays.remove(BirthdayKey.of(previous));
+            PersistentSortedMap<NameKey, User> nameIndex = previous == null ? names : removeNames(previous);
+            for (NameKey key : nameKeys)
+                nameIndex = nameIndex.put(key, user);
+            return new Version(byId.put(user), users.put(user.getId(), user), index.put(BirthdayKey.of(user), user),
+                    nameIndex);
+        }
+
+
+        Version remove(User user) {
+            return new Version(byId.remove(user.getId()), users.remove(user.getId()),
+                    birthdays.remove(BirthdayKey.of(user)), removeNames(user));
+        }
+
+
+        private PersistentSortedMap<NameKey, User> removeNames(User user) {
+            PersistentSortedMap<NameKey, User> nameIndex = names;
+            for (NameKey key : NameKey.of(user))
+                nameIndex = nameIndex.remove(key);
+            return nameIndex;
+        }
+
+    }
+
+
+    /**
+     * Replaces all users, which must have distinct ids, without logging them.
+     * It's meant for loading stored data.
+     * The indexes are sorted in parallel and built balanced in linear time.
+     * Of users loaded with the same email only the first by id is found by it.
+     */
+    public void set(Collection<User> newUsers) {
+        set(newUsers, 0);
+    }
+
+
+    /**
+     * Also moves the id sequence up to lastId, so that ids of deleted users aren't reused.
+     */
+    public void set(Collection<User> newUsers, long lastId) {
+        User[] byId = newUsers.toArray(User[]::new);
+        for (User user : byId)
+            deduplicate(user);
+        User[] byBirthday = byId.clone();
+        Arrays.parallelSort(byId, BY_ID);
+        Arrays.parallelSort(byBirthday, BY_BIRTHDAY);
+        List<Map.Entry<NameKey, User>> byName = new ArrayList<>(byId.length * 2);
+        for (User user : byId)
+            for (NameKey key : NameKey.of(user, dictionary::canonical))
+                byName.add(Map.entry(key, user));
+        @SuppressWarnings("unchecked")
+        Map.Entry<NameKey, User>[] names = byName.toArray(Map.Entry[]::new);
+        Arrays.parallelSort(names, Map.Entry.comparingByKey());
+        Version loaded = new Version(PersistentHashMap.of(Arrays.asList(byId), User::getId),
+                PersistentSortedMap.ofSorted(Arrays.asList(byId), User::getId),
+                PersistentSortedMap.ofSorted(Arrays.asList(byBirthday), BirthdayKey::of),
+                PersistentSortedMap.ofSorted(Arrays.asList(names), Map.Entry::getKey, Map.Entry::getValue));
+        writeLock.lock();
+        try {
+            emails.clear();
+            for (User user : byId)
+                if (user.getEmail() != null)
+                    emails.putIfAbsent(User.emailKey(user.getEmail()), user.getId());
+            draft = loaded;
+            version = loaded;
+            ids.accumulateAndGet(byId.length == 0 ? 0 : byId[byId.length - 1].getId(), Math::max);
+            ids.accumulateAndGet(lastId, Math::max);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    public int size() {
+        return version.users().size();
+    }
+
+
+    public StringDictionary dictionary() {
+        return dictionary;
+    }
+
+
+    /**
+     * Replaces the fields whose values repeat across users by their canonical instances.
+     */
+    protected void deduplicate(User user) {
+        user.setFirstName(dictionary.canonical(user.getFirstName()));
+        user.setLastName(dictionary.canonical(user.getLastName()));
+        user.setAddress(dictionary.canonical(user.getAddress()));
+    }
+
+
+    @PostConstruct
+    protected void recover() {
+        if (journal == null)
+            return;
+        UserJournal.Recovery recovery = journal.recover();
+        set(recovery.users(), recovery.lastId());
+    }
+
+
+    @Override
+    public boolean exists(long id) {
+        return version.get(id) != null;
+    }
+
+
+    @Override
+    public boolean notExists(long id) {
+        return version.get(id) == null;
+    }
+
+
+    @Override
+    public Optional<User> findById(long id) {
+        return Optional.ofNullable(version.get(id));
+    }
+
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        String key = User.emailKey(email);
+        Long id = key == null ? null : emails.get(key);
+        User user = id == null ? null : version.get(id);
+        return user != null && key.equals(User.emailKey(user.getEmail())) ? Optional.of(user) : Optional.empty();
+    }
+
+
+    @Override
+    public long count() {
+        return version.users().size();
+    }
+
+
+    @Override
+    public List<User> findAll() {
+        PersistentSortedMap<Long, User> users = version.users();
+        List<User> result = new ArrayList<>(users.size());
+        users.values().forEach(result::add);
+        return result;
+    }
+
+
+    /**
+     * Logs the change and stores the user in the next version. Must be called under the write lock.
+     * The version of the user continues the one of the user it replaces.
+     * Nothing changes unless the change is logged, so a failed append leaves no trace to publish.
+     * @throws EmailConflictException before any change if another user has the email
+     */
+    protected void put(User user) {
+        User previous = draft.get(user.getId());
+        checkEmail(user);
+        user.setVersion(previous == null ? 0 : previous.getVersion() + 1);
+        deduplicate(user);
+        if (journal != null)
+            position = journal.appendPut(user);
+        if (user.getEmail() != null)
+            emails.put(User.emailKey(user.getEmail()), user.getId());
+        draft = draft.put(user, NameKey.of(user, dictionary::canonical));
+        if (previous != null)
+            releaseEmail(previous, user.getEmail());
+    }
+
+
+    /**
+     * Throws if another user has the email. Must be called under the write lock,
+     * the email index changes only under it.
+     */
+    protected void checkEmail(User user) {
+        Long owner = user.getEmail() == null ? null : emails.get(User.emailKey(user.getEmail()));
+        if (owner != null && owner != user.getId())
+            throw new EmailConflictException(user.getEmail());
+    }
+
+
+    /**
+     * Releases the email of the user unless it keeps it. Must be called under the write lock.
+     */
+    protected void releaseEmail(User user, String keptEmail) {
+        String key = User.emailKey(user.getEmail());
+        if (key != null && !key.equals(User.emailKey(keptEmail)))
+            emails.remove(key, user.getId());
+    }
+
+
+    /**
+     * Logs the change and removes the user. Must be called under the write lock.
+     */
+    protected User remove(long id) {
+        User user = draft.get(id);
+        if (user != null) {
+            if (journal != null)
+                position = journal.appendDelete(id);
+            draft = draft.remove(user);
+            releaseEmail(user, null);
+        }
+        return user;
+    }
+
+
+    /**
+     * Publishes the changes made under the write lock and releases it.
+     * If the journal syncs every write, the lock is released first and the changes
+     * are published once they are durable, writers still wait for the disk together.
+     * @throws UncheckedIOException if the journal failed to write the changes, which are dropped
+     */
+    protected void unlockAndSync() {
+        Version next = draft;
+        long written = position;
+        if (journal == null || !journal.syncs()) {
+            version = next;
+            writeLock.unlock();
+            return;
+        }
+        writeLock.unlock();
+        try {
+            journal.sync(written);
+        } catch (UncheckedIOException e) {
+            discardUnlogged();
+            throw e;
+        }
+        publish(next, written);
+    }
+
+
+    private void publish(Version next, long written) {
+        publishLock.lock();
+        try {
+            if (written <= publishedPosition)
+                return;
+            publishedPosition = written;
+            version = next;
+            if (discarded)
+                realign();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+
+    /**
+     * Takes the draft back to the published version, which holds only logged changes.
+     * The journal stays broken, so later writes fail before changing anything.
+     */
+    private void discardUnlogged() {
+        publishLock.lock();
+        try {
+            discarded = true;
+            realign();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+
+    /**
+     * Makes the draft and the email index match the published version.
+     */
+    private void realign() {
+        writeLock.lock();
+        try {
+            Version current = version;
+            draft = current;
+            emails.entrySet().removeIf(entry -> {
+                User user = current.get(entry.getValue());
+                return user == null || !entry.getKey().equals(User.emailKey(user.getEmail()));
+            });
+            for (User user : current.users().values())
+                if (user.getEmail() != null)
+                    emails.putIfAbsent(User.emailKey(user.getEmail()), user.getId());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    @Override
+    public User save(User user) {
+        writeLock.lock();
+        try {
+            if (user.getId() == 0 || draft.get(user.getId()) == null) {
+                user.setId(0);
+                checkEmail(user);
+                user.setId(ids.incrementAndGet());
+            }
+            put(user);
+        } finally {
+            unlockAndSync();
+        }
+        return user;
+    }
+
+
+    @Override
+    public User update(User user) {
+        writeLock.lock();
+        try {
+            return replace(user);
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+
+    /**
+     * Compares the version and stores the user in one step under the write lock,
+     * so of two writers that read the same version only the first succeeds.
+     */
+    @Override
+    public User update(User user, long expectedVersion) {
+        writeLock.lock();
+        try {
+            User current = user.getId() == 0 ? null : draft.get(user.getId());
+            if (current == null)
+                return null;
+            if (current.getVersion() != expectedVersion)
+                throw new VersionConflictException(user.getId(), expectedVersion, current.getVersion());
+            put(user);
+            return user;
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+
+    /**
+     * Stores the user if it exists. Must be called under the write lock.
+     */
+    protected User replace(User user) {
+        if (user.getId() == 0 || draft.get(user.getId()) == null)
+            return null;
+        put(user);
+        return user;
+    }
+
+
+    @Override
+    public User deleteById(long id) {
+        writeLock.lock();
+        try {
+            return remove(id);
+        } finally {
+            unlockAndSync();
+        }
+    }
+
+
+    /**
+     * Ids are given only to the users that are saved.
+     */
+    @Override
+    public List<User> saveAll(List<User> newUsers) {
+        List<User> result = new ArrayList<>(newUsers.size());
+        writeLock.lock();
+        try {
+            for (User user : newUsers) {
+                user.setId(0);
+                try {
+                    checkEmail(user);
+                } catch (EmailConflictException e) {
+                    result.add(null);
+                    continue;
+                }
+                user.setId(ids.incrementAndGet());
+                put(user);
+                result.add(user);
+            }
+        } finally {
+            unlockAndSync();
+        }
+        return result;
+    }
+
+
+    @Override
+    public List<User> updateAll(List<User> updatedUsers) {
+        List<User> result = new ArrayList<>(updatedUsers.size());
+        writeLock.lock();
+        try {
+            for (User user : updatedUsers) {
+                try {
+                    result.add(replace(user));
+                } catch (EmailConflictException e) {
+                    result.add(null);
+                }
+            }
+        } finally {
+            unlockAndSync();
+        }
+        return result;
+    }
+
+
+    @Override
+    public List<User> deleteAllById(List<Long> deletedIds) {
+        List<User> result = new ArrayList<>(deletedIds.size());
+        writeLock.lock();
+        try {
+            for (long id : deletedIds)
+                result.add(remove(id));
+        } finally {
+            unlockAndSync();
+        }
+        return result;
+    }
+
+
+    /**
+     * Writes a snapshot of the journal, so that the next start replays
+     * only the changes made after it. Writers are held only while
+     * the journal switches to a new segment, the snapshot holds exactly
+     * the version published before the switch.
+     */
+    @Scheduled(initialDelayString = "${repository.journal.snapshot-interval-ms:300000}",
+            fixedDelayString = "${repository.journal.snapshot-interval-ms:300000}")
+    public void checkpoint() {
+        if (journal == null)
+            return;
+        long segment;
+        long lastId;
+        Version current;
+        writeLock.lock();
+        try {
+            segment = journal.rotate();
+            lastId = ids.get();
+            current = draft;
+        } finally {
+            writeLock.unlock();
+        }
+        journal.snapshot(segment, lastId, current.users().values());
+    }
+
+
+    @Override
+    public List<User> findByBirthdayAfterAndBefore(LocalDate from, LocalDate to) {
+        List<User> result = new ArrayList<>();
+        version.birthdays().values(new BirthdayKey(from, Long.MIN_VALUE), true,
+                new BirthdayKey(to, Long.MAX_VALUE), true).forEach(result::add);
+        result.sort(BY_ID);
+        return result;
+    }
+
+
+    /**
+     * Walks the name index from the prefix to the first name without it, in O(log n + limit)
+     * unless many of the names found are the other name of a user already taken.
+     */
+    @Override
+    public List<User> findByNamePrefix(String prefix, int limit) {
+        String key = User.nameKey(prefix);
+        List<User> result = new ArrayList<>();
+        Set<Long> found = new HashSet<>();
+        for (User user : version.names().values(new NameKey(key, Long.MIN_VALUE), true,
+                new NameKey(key + Character.MAX_VALUE, Long.MIN_VALUE), false)) {
+            if (result.size() == limit)
+                break;
+            if (found.add(user.getId()))
+                result.add(user);
+        }
+        return result;
+    }
+
+
+    @Override
+    public List<User> findPage(LocalDate from, LocalDate to, UserCursor after, int limit) {
+        BirthdayKey lower = new BirthdayKey(from, Long.MIN_VALUE);
+        BirthdayKey upper = new BirthdayKey(to, Long.MAX_VALUE);
+        if (after != null && BirthdayKey.of(after).compareTo(lower) > 0)
+            lower = BirthdayKey.of(after);
+        List<User> result = new ArrayList<>();
+        if (lower.compareTo(upper) >= 0)
+            return result;
+        for (User user : version.birthdays().values(lower, false, upper, true)) {
+            if (result.size() == limit)
+                break;
+            result.add(user);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,290 @@
+package solution.clear.test.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
+
+/**
+ * Repository backed by the embedded database of the jpa profile.
+ * Batch operations go through saveAll and deleteAllInBatch,
+ * so Hibernate groups their statements into JDBC batches.
+ * Unconditional writes take over the stored version, conditional ones
+ * are checked against it and again by Hibernate when they are flushed.
+ * Emails are looked up by the normalized email column, which has a unique constraint,
+ * and names by prefix on the indexed normalized name columns.
+ * Writes check it first and flush, so a concurrent duplicate the check
+ * missed fails on the constraint within the call.
+ */
+
+@Service
+@Profile("jpa")
+@Transactional(readOnly = true)
+public class JpaUserRepository implements UserRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JpaUserRepository.class);
+
+    private static final LocalDate MIN_DATE = LocalDate.of(-9999, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    @Autowired
+    private UserJpaRepository jpaRepository;
+
+
+    /**
+     * LocalDate.MIN and MAX are out of the range the database driver converts reliably.
+     */
+    protected static LocalDate clamp(LocalDate date) {
+        return date.isBefore(MIN_DATE) ? MIN_DATE : date.isAfter(MAX_DATE) ? MAX_DATE : date;
+    }
+
+
+    protected Map<Long, User> findAllById(List<Long> ids) {
+        return jpaRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+
+
+    /**
+     * Throws if another stored user, or an earlier user of the same batch, has the email.
+     */
+    protected void checkEmail(User user, Set<String> batchEmails) {
+        String key = User.emailKey(user.getEmail());
+        if (key == null)
+            return;
+        if (batchEmails != null && !batchEmails.add(key) || jpaRepository.findByEmailKey(key)
+                .filter(other -> other.getId() != user.getId()).isPresent())
+            throw new EmailConflictException(user.getEmail());
+    }
+
+
+    protected void flush() {
+        try {
+            jpaRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw new EmailConflictException(e);
+        }
+    }
+
+
+    /**
+     * Derives the email and name keys of rows stored before the columns existed, Hibernate adds them empty.
+     * A row whose email key another row already has keeps none and is logged, its email must be changed.
+     * Returns the number of rows updated, a row given both kinds of keys counts twice.
+     */
+    @Transactional
+    public int backfillKeys() {
+        Set<String> keys = new HashSet<>();
+        int filled = 0;
+        for (User user : jpaRepository.findByEmailKeyIsNullAndEmailIsNotNull()) {
+            String key = User.emailKey(user.getEmail());
+            if (!keys.add(key) || jpaRepository.findByEmailKey(key).isPresent())
+                LOG.warn("User {} has the email of another user, {} is not indexed", user.getId(), user.getEmail());
+            else
+                filled += jpaRepository.setEmailKey(user.getId(), key);
+        }
+        for (User user : jpaRepository.findWithoutNameKeys())
+            filled += jpaRepository.setNameKeys(user.getId(), User.nameKey(user.getFirstName()),
+                    User.nameKey(user.getLastName()));
+        return filled;
+    }
+
+
+    @Override
+    public boolean exists(long id) {
+        return jpaRepository.existsById(id);
+    }
+
+
+    @Override
+    public boolean notExists(long id) {
+        return !jpaRepository.existsById(id);
+    }
+
+
+    @Override
+    public Optional<User> findById(long id) {
+        return jpaRepository.findById(id);
+    }
+
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        String key = User.emailKey(email);
+        return key == null ? Optional.empty() : jpaRepository.findByEmailKey(key);
+    }
+
+
+    @Override
+    public long count() {
+        return jpaRepository.count();
+    }
+
+
+    @Override
+    public List<User> findAll() {
+        return jpaRepository.findAll(Sort.by("id"));
+    }
+
+
+    @Override
+    @Transactional
+    public User save(User user) {
+        User current = user.getId() == 0 ? null : jpaRepository.findById(user.getId()).orElse(null);
+        if (current == null)
+            user.setId(0);
+        user.setVersion(current == null ? 0 : current.getVersion());
+        checkEmail(user, null);
+        User saved = jpaRepository.save(user);
+        flush();
+        return saved;
+    }
+
+
+    @Override
+    @Transactional
+    public User update(User user) {
+        User current = user.getId() == 0 ? null : jpaRepository.findById(user.getId()).orElse(null);
+        if (current == null)
+            return null;
+        user.setVersion(current.getVersion());
+        checkEmail(user, null);
+        User saved = jpaRepository.save(user);
+        flush();
+        return saved;
+    }
+
+
+    @Override
+    @Transactional
+    public User update(User user, long expectedVersion) {
+        User current = user.getId() == 0 ? null : jpaRepository.findById(user.getId()).orElse(null);
+        if (current == null)
+            return null;
+        if (current.getVersion() != expectedVersion)
+            throw new VersionConflictException(user.getId(), expectedVersion, current.getVersion());
+        user.setVersion(expectedVersion);
+        checkEmail(user, null);
+        try {
+            return jpaRepository.saveAndFlush(user);
+        } catch (OptimisticLockingFailureException e) {
+            throw new VersionConflictException(e);
+        } catch (DataIntegrityViolationException e) {
+            throw new EmailConflictException(e);
+        }
+    }
+
+
+    @Override
+    @Transactional
+    public User deleteById(long id) {
+        User user = jpaRepository.findById(id).orElse(null);
+        if (user != null)
+            jpaRepository.delete(user);
+        return user;
+    }
+
+
+    @Override
+    @Transactional
+    public List<User> saveAll(List<User> newUsers) {
+        Set<String> batchEmails = new HashSet<>();
+        List<User> valid = new ArrayList<>(newUsers.size());
+        boolean[] rejected = new boolean[newUsers.size()];
+        for (int i = 0; i < rejected.length; i++) {
+            User user = newUsers.get(i);
+            user.setId(0);
+            try {
+                checkEmail(user, batchEmails);
+                valid.add(user);
+            } catch (EmailConflictException e) {
+                rejected[i] = true;
+            }
+        }
+        Iterator<User> saved = jpaRepository.saveAll(valid).iterator();
+        flush();
+        List<User> result = new ArrayList<>(newUsers.size());
+        for (boolean userRejected : rejected)
+            result.add(userRejected ? null : saved.next());
+        return result;
+    }
+
+
+    @Override
+    @Transactional
+    public List<User> updateAll(List<User> updatedUsers) {
+        Map<Long, User> existing = findAllById(updatedUsers.stream().map(User::getId).toList());
+        List<User> result = new ArrayList<>(updatedUsers.size());
+        Set<String> batchEmails = new HashSet<>();
+        for (User user : updatedUsers) {
+            User current = existing.get(user.getId());
+            if (current == null) {
+                result.add(null);
+                continue;
+            }
+            user.setVersion(current.getVersion());
+            try {
+                checkEmail(user, batchEmails);
+                result.add(jpaRepository.save(user));
+            } catch (EmailConflictException e) {
+                result.add(null);
+            }
+        }
+        flush();
+        return result;
+    }
+
+
+    @Override
+    @Transactional
+    public List<User> deleteAllById(List<Long> deletedIds) {
+        Map<Long, User> existing = findAllById(deletedIds);
+        jpaRepository.deleteAllInBatch(existing.values());
+        List<User> result = new ArrayList<>(deletedIds.size());
+        for (long id : deletedIds)
+            result.add(existing.remove(id));
+        return result;
+    }
+
+
+    @Override
+    public List<User> findByBirthdayAfterAndBefore(LocalDate from, LocalDate to) {
+        return jpaRepository.findByBirthdayBetweenOrderById(clamp(from), clamp(to));
+    }
+
+
+    @Override
+    public List<User> findByNamePrefix(String prefix, int limit) {
+        String pattern = User.nameKey(prefix).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return jpaRepository.findByNamePattern(pattern, PageRequest.of(0, limit));
+    }
+
+
+    @Override
+    public List<User> findPage(LocalDate from, LocalDate to, UserCursor after, int limit) {
+        UserCursor lower = new UserCursor(clamp(from), Long.MIN_VALUE);
+        if (after != null && !after.birthday().isBefore(lower.birthday()))
+            lower = after;
+        return jpaRepository.findPage(lower.birthday(), lower.id(), clamp(to), PageRequest.of(0, limit));
+    }
+
+}
@@ -0,0 +1,135 @@
+package solution.clear.test.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Growable memory outside the heap, made of direct buffers of a fixed size,
+ * so it grows without copying what it holds and adds only a few objects to the heap.
+ * Until it needs one whole buffer it holds a smaller one, which grows by copying.
+ * Ints and longs are accessed at offsets aligned to their size, which never span two buffers,
+ * scans copy them in bulk to arrays on the heap rather than read them one by one.
+ * Concurrent reads are safe, writes must be exclusive.
+ */
+
+final class OffHeapBuffer {
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_SIZE = 1 << 12;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+
+    long capacity() {
+        return chunks.length == 1 ? chunks[0].capacity() : (long) chunks.length << CHUNK_BITS;
+    }
+
+
+    void ensureCapacity(long bytes) {
+        if (bytes <= capacity())
+            return;
+        if (chunks.length == 1 && chunks[0].capacity() < CHUNK_SIZE || bytes < CHUNK_SIZE) {
+            int size = bytes < CHUNK_SIZE ? Math.max(MIN_SIZE, Integer.highestOneBit((int) bytes - 1) << 1)
+                    : CHUNK_SIZE;
+            ByteBuffer first = allocate(size);
+            if (chunks.length == 1)
+                first.put(0, chunks[0], 0, chunks[0].capacity());
+            chunks = new ByteBuffer[] {first};
+            if (size == CHUNK_SIZE)
+                ensureCapacity(bytes);
+            return;
+        }
+        int count = Math.toIntExact((bytes + CHUNK_MASK) >>> CHUNK_BITS);
+        ByteBuffer[] grown = Arrays.copyOf(chunks, count);
+        for (int i = chunks.length; i < count; i++)
+            grown[i] = allocate(CHUNK_SIZE);
+        chunks = grown;
+    }
+
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+
+    private ByteBuffer chunk(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)];
+    }
+
+
+    byte get(long offset) {
+        return chunk(offset).get((int) offset & CHUNK_MASK);
+    }
+
+
+    int getInt(long offset) {
+        return chunk(offset).getInt((int) offset & CHUNK_MASK);
+    }
+
+
+    void putInt(long offset, int value) {
+        chunk(offset).putInt((int) offset & CHUNK_MASK, value);
+    }
+
+
+    long getLong(long offset) {
+        return chunk(offset).getLong((int) offset & CHUNK_MASK);
+    }
+
+
+    void putLong(long offset, long value) {
+        chunk(offset).putLong((int) offset & CHUNK_MASK, value);
+    }
+
+
+    void getInts(long offset, int[] target, int from, int length) {
+        while (length > 0) {
+            int position = (int) offset & CHUNK_MASK;
+            int count = Math.min(length, (CHUNK_SIZE - position) / Integer.BYTES);
+            chunk(offset).asIntBuffer().get(position / Integer.BYTES, target, from, count);
+            offset += (long) count * Integer.BYTES;
+            from += count;
+            length -= count;
+        }
+    }
+
+
+    void getLongs(long offset, long[] target, int from, int length) {
+        while (length > 0) {
+            int position = (int) offset & CHUNK_MASK;
+            int count = Math.min(length, (CHUNK_SIZE - position) / Long.BYTES);
+            chunk(offset).asLongBuffer().get(position / Long.BYTES, target, from, count);
+            offset += (long) count * Long.BYTES;
+            from += count;
+            length -= count;
+        }
+    }
+
+
+    void get(long offset, byte[] target, int from, int length) {
+        while (length > 0) {
+            int position = (int) offset & CHUNK_MASK;
+            int count = Math.min(length, CHUNK_SIZE - position);
+            chunk(offset).get(position, target, from, count);
+            offset += count;
+            from += count;
+            length -= count;
+        }
+    }
+
+
+    void put(long offset, byte[] source, int from, int length) {
+        while (length > 0) {
+            int position = (int) offset & CHUNK_MASK;
+            int count = Math.min(length, CHUNK_SIZE - position);
+            chunk(offset).put(position, source, from, count);
+            offset += count;
+            from += count;
+            length -= count;
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package solution.clear.test.repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable map of values by a long key they carry, a hash array mapped trie with path copying.
+ * Each level takes the next 5 bits of the key, from the lowest ones, and a node keeps
+ * only the slots in use, a bitmap tells which. A slot holds a value or a node below it.
+ * Lookups read at most 13 nodes whatever the size, ids given in sequence fill the trie
+ * densely, so a million users are found in 4 steps.
+ * Every change returns a new map sharing all untouched nodes with the old one.
+ */
+
+final class PersistentHashMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final class Node {
+
+        final int bitmap;
+        final Object[] slots;
+
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+    }
+
+
+    private record Keyed(long order, Object value) {
+
+    }
+
+
+    private static final Node EMPTY = new Node(0, new Object[0]);
+
+    private final ToLongFunction<? super V> keyOf;
+    private final Node root;
+    private final int size;
+
+
+    private PersistentHashMap(ToLongFunction<? super V> keyOf, Node root, int size) {
+        this.keyOf = keyOf;
+        this.root = root;
+        this.size = size;
+    }
+
+
+    static <V> PersistentHashMap<V> empty(ToLongFunction<? super V> keyOf) {
+        return new PersistentHashMap<>(keyOf, EMPTY, 0);
+    }
+
+
+    /**
+     * Builds a map from values with distinct keys in O(n) after sorting them in trie order.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentHashMap<V> of(List<V> values, ToLongFunction<? super V> keyOf) {
+        Keyed[] keyed = new Keyed[values.size()];
+        for (int i = 0; i < keyed.length; i++)
+            keyed[i] = new Keyed(order(keyOf.applyAsLong(values.get(i))), values.get(i));
+        Arrays.parallelSort(keyed, (entry, other) -> Long.compareUnsigned(entry.order(), other.order()));
+        for (int i = 1; i < keyed.length; i++)
+            if (keyed[i].order() == keyed[i - 1].order())
+                throw new IllegalArgumentException("Duplicate key: " + keyOf.applyAsLong((V) keyed[i].value()));
+        return new PersistentHashMap<>(keyOf, build(keyed, 0, keyed.length, 0), keyed.length);
+    }
+
+
+    /**
+     * Rearranges the bits of the key so that the lowest 5, which the root uses, come first.
+     */
+    private static long order(long key) {
+        long order = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += BITS) {
+            int width = Math.min(BITS, Long.SIZE - shift);
+            order = order << width | key >>> shift & (1L << width) - 1;
+        }
+        return order;
+    }
+
+
+    private static int index(long key, int shift) {
+        return (int) (key >>> shift & MASK);
+    }
+
+
+    private static int chunk(Keyed entry, int shift) {
+        int width = Math.min(BITS, Long.SIZE - shift);
+        return (int) (entry.order() >>> Long.SIZE - shift - width & (1L << width) - 1);
+    }
+
+
+    /**
+     * Builds the node of a range of entries that share the chunks above the shift.
+     */
+    private static Node build(Keyed[] keyed, int from, int to, int shift) {
+        int bitmap = 0;
+        Object[] slots = new Object[Math.min(to - from, 1 << BITS)];
+        int count = 0;
+        for (int start = from; start < to;) {
+            int chunk = chunk(keyed[start], shift);
+            int end = start + 1;
+            while (end < to && chunk(keyed[end], shift) == chunk)
+                end++;
+            bitmap |= 1 << chunk;
+            slots[count++] = end - start == 1 ? keyed[start].value() : build(keyed, start, end, shift + BITS);
+            start = end;
+        }
+        return new Node(bitmap, Arrays.copyOf(slots, count));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        Node node = root;
+        for (int shift = 0;; shift += BITS) {
+            int bit = 1 << index(key, shift);
+            if ((node.bitmap & bit) == 0)
+                return null;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & bit - 1)];
+            if (!(slot instanceof Node child)) {
+                V value = (V) slot;
+                return keyOf.applyAsLong(value) == key ? value : null;
+            }
+            node = child;
+        }
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Puts the value under its key, replacing the value that has the same key.
+     */
+    PersistentHashMap<V> put(V value) {
+        long key = keyOf.applyAsLong(value);
+        int grown = get(key) == null ? size + 1 : size;
+        return new PersistentHashMap<>(keyOf, put(root, 0, key, value), grown);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Node put(Node node, int shift, long key, V value) {
+        int bit = 1 << index(key, shift);
+        int index = Integer.bitCount(node.bitmap & bit - 1);
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = value;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object[] slots = node.slots.clone();
+        if (slot instanceof Node child)
+            slots[index] = put(child, shift + BITS, key, value);
+        else if (keyOf.applyAsLong((V) slot) == key)
+            slots[index] = value;
+        else
+            slots[index] = split(slot, keyOf.applyAsLong((V) slot), value, key, shift + BITS);
+        return new Node(node.bitmap, slots);
+    }
+
+
+    /**
+     * Returns the node holding two values whose keys share the chunks above the shift.
+     * Distinct keys differ in a chunk by the last level.
+     */
+    private static Node split(Object existing, long existingKey, Object value, long key, int shift) {
+        int existingIndex = index(existingKey, shift);
+        int index = index(key, shift);
+        if (existingIndex == index)
+            return new Node(1 << index, new Object[] {split(existing, existingKey, value, key, shift + BITS)});
+        return new Node(1 << existingIndex | 1 << index,
+                existingIndex < index ? new Object[] {existing, value} : new Object[] {value, existing});
+    }
+
+
+    PersistentHashMap<V> remove(long key) {
+        if (get(key) == null)
+            return this;
+        return new PersistentHashMap<>(keyOf, remove(root, 0, key), size - 1);
+    }
+
+
+    /**
+     * Removes the key, which must be present. A node left with a single value
+     * is replaced by the value in its parent, so every node below the root holds two values or more.
+     */
+    private static Node remove(Node node, int shift, long key) {
+        int bit = 1 << index(key, shift);
+        int index = Integer.bitCount(node.bitmap & bit - 1);
+        if (node.slots[index] instanceof Node child) {
+            Node removed = remove(child, shift + BITS, key);
+            Object[] slots = node.slots.clone();
+            slots[index] = removed.slots.length == 1 && !(removed.slots[0] instanceof Node) ? removed.slots[0]
+                    : removed;
+            return new Node(node.bitmap, slots);
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+}
@@ -0,0 +1,267 @@
+package solution.clear.test.repository;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Immutable sorted map, an AVL tree with path copying.
+ * Every change returns a new map sharing all untouched nodes with the old one,
+ * so a reader holding a map sees it unchanged for as long as it needs.
+ */
+
+final class PersistentSortedMap<K extends Comparable<? super K>, V> {
+
+    private static final class Node<K, V> {
+
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int height;
+        final int size;
+
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+
+    }
+
+
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null);
+
+    private final Node<K, V> root;
+
+
+    private PersistentSortedMap(Node<K, V> root) {
+        this.root = root;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+
+    /**
+     * Builds a balanced map from values already sorted by their keys, in O(n).
+     */
+    static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> ofSorted(List<V> values,
+            Function<V, K> key) {
+        return ofSorted(values, key, Function.identity());
+    }
+
+
+    /**
+     * Builds a balanced map from entries already sorted by their keys, in O(n).
+     */
+    static <E, K extends Comparable<? super K>, V> PersistentSortedMap<K, V> ofSorted(List<E> entries,
+            Function<E, K> key, Function<E, V> value) {
+        return new PersistentSortedMap<>(build(entries, key, value, 0, entries.size()));
+    }
+
+
+    private static <E, K, V> Node<K, V> build(List<E> entries, Function<E, K> key, Function<E, V> value,
+            int from, int to) {
+        if (from >= to)
+            return null;
+        int middle = (from + to) >>> 1;
+        E entry = entries.get(middle);
+        return new Node<>(key.apply(entry), value.apply(entry), build(entries, key, value, from, middle),
+                build(entries, key, value, middle + 1, to));
+    }
+
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right))
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            Node<K, V> pivot = left.right;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(left.key, left.value, left.left, pivot.left),
+                    new Node<>(key, value, pivot.right, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) >= height(right.left))
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            Node<K, V> pivot = right.left;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(key, value, left, pivot.left),
+                    new Node<>(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> put(Node<K, V> node, K key, V value) {
+        if (node == null)
+            return new Node<>(key, value, null, null);
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0)
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+        if (comparison > 0)
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+        return new Node<>(key, value, node.left, node.right);
+    }
+
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> remove(Node<K, V> node, K key) {
+        if (node == null)
+            return null;
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0) {
+            Node<K, V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (comparison > 0) {
+            Node<K, V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+        Node<K, V> first = node.right;
+        while (first.left != null)
+            first = first.left;
+        return balance(first.key, first.value, node.left, removeFirst(node.right));
+    }
+
+
+    private static <K, V> Node<K, V> removeFirst(Node<K, V> node) {
+        if (node.left == null)
+            return node.right;
+        return balance(node.key, node.value, removeFirst(node.left), node.right);
+    }
+
+
+    PersistentSortedMap<K, V> put(K key, V value) {
+        return new PersistentSortedMap<>(put(root, key, value));
+    }
+
+
+    PersistentSortedMap<K, V> remove(K key) {
+        Node<K, V> node = remove(root, key);
+        return node == root ? this : new PersistentSortedMap<>(node);
+    }
+
+
+    V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison == 0)
+                return node.value;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+
+    int size() {
+        return size(root);
+    }
+
+
+    Iterable<K> keys() {
+        return () -> new RangeIterator<>(root, null, true, null, true, node -> node.key);
+    }
+
+
+    Iterable<V> values() {
+        return values(null, true, null, true);
+    }
+
+
+    /**
+     * Returns values in key order between the bounds, a null bound means unbounded.
+     */
+    Iterable<V> values(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        return () -> new RangeIterator<>(root, from, fromInclusive, to, toInclusive, node -> node.value);
+    }
+
+
+    private static final class RangeIterator<K extends Comparable<? super K>, V, T> implements Iterator<T> {
+
+        private final Deque<Node<K, V>> path = new ArrayDeque<>();
+        private final K to;
+        private final boolean toInclusive;
+        private final Function<Node<K, V>, T> element;
+        private Node<K, V> next;
+
+
+        RangeIterator(Node<K, V> root, K from, boolean fromInclusive, K to, boolean toInclusive,
+                Function<Node<K, V>, T> element) {
+            this.to = to;
+            this.toInclusive = toInclusive;
+            this.element = element;
+            Node<K, V> node = root;
+            while (node != null) {
+                int comparison = from == null ? 1 : node.key.compareTo(from);
+                if (comparison > 0 || comparison == 0 && fromInclusive) {
+                    path.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+            advance();
+        }
+
+
+        private void advance() {
+            next = path.poll();
+            if (next == null)
+                return;
+            if (to != null) {
+                int comparison = next.key.compareTo(to);
+                if (comparison > 0 || comparison == 0 && !toInclusive) {
+                    next = null;
+                    path.clear();
+                    return;
+                }
+            }
+            for (Node<K, V> node = next.right; node != null; node = node.left)
+                path.push(node);
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+
+        @Override
+        public T next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            T value = element.apply(next);
+            advance();
+            return value;
+        }
+
+    }
+
+}
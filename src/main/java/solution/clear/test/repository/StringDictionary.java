@@ -0,0 +1,105 @@
+package solution.clear.test.repository;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded dictionary of canonical strings, so that stored users share one instance
+ * of a repeated value instead of holding a copy each.
+ * It's a lossy table of weak references with two slots a value may take:
+ * a value found in neither replaces a free slot or the first one, so the table never grows,
+ * values no user holds anymore are collected and callers never lock. At worst
+ * a value is evicted or two callers race and one of them keeps its copy.
+ * Bytes saved are estimated from the layout of compact strings with compressed pointers.
+ */
+
+public final class StringDictionary {
+
+    /**
+     * Header, hash fields, coder and array reference of a string.
+     */
+    private static final int STRING_SIZE = 24;
+    private static final int ARRAY_HEADER = 16;
+
+    private final AtomicReferenceArray<WeakReference<String>> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+
+    /**
+     * The capacity is rounded up to a power of 2.
+     */
+    public StringDictionary(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+
+    /**
+     * Returns the instance kept for an equal value or keeps this one. Returns null for null.
+     */
+    public String canonical(String value) {
+        if (value == null)
+            return null;
+        int hash = value.hashCode();
+        int first = (hash ^ hash >>> 16) & mask;
+        int second = first ^ 1;
+        String firstValue = get(first);
+        String secondValue = get(second);
+        String found = value.equals(firstValue) ? firstValue : value.equals(secondValue) ? secondValue : null;
+        if (found != null) {
+            hits.increment();
+            if (found != value)
+                savedBytes.add(size(value));
+            return found;
+        }
+        misses.increment();
+        slots.set(firstValue != null && secondValue == null ? second : first, new WeakReference<>(value));
+        return value;
+    }
+
+
+    private String get(int slot) {
+        WeakReference<String> reference = slots.get(slot);
+        return reference == null ? null : reference.get();
+    }
+
+
+    private static long size(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length() && bytesPerChar == 1; i++)
+            if (value.charAt(i) > 0xFF)
+                bytesPerChar = 2;
+        return STRING_SIZE + (ARRAY_HEADER + (long) value.length() * bytesPerChar + 7 & ~7L);
+    }
+
+
+    public long hits() {
+        return hits.sum();
+    }
+
+
+    public long misses() {
+        return misses.sum();
+    }
+
+
+    public double hitRatio() {
+        long hits = hits();
+        long lookups = hits + misses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+
+    /**
+     * Estimated bytes of the copies replaced by canonical instances so far.
+     */
+    public long savedBytes() {
+        return savedBytes.sum();
+    }
+
+}
@@ -0,0 +1,81 @@
+package solution.clear.test.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import solution.clear.test.entity.User;
+
+/**
+ * Compact binary form of a user shared by the journal and its snapshots:
+ * id, version, epoch-day birthday, then email, first name, last name, address
+ * and phone as length-prefixed UTF-8 (length -1 stands for null).
+ */
+
+final class UserCodec {
+
+    private static final int NULL_LENGTH = -1;
+
+
+    private UserCodec() {
+    }
+
+
+    private static byte[][] strings(User user) {
+        return new byte[][] {
+            bytes(user.getEmail()), bytes(user.getFirstName()), bytes(user.getLastName()),
+            bytes(user.getAddress()), bytes(user.getPhone())
+        };
+    }
+
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    static byte[] encode(User user) {
+        byte[][] strings = strings(user);
+        int size = 3 * Long.BYTES + strings.length * Integer.BYTES;
+        for (byte[] string : strings)
+            size += string == null ? 0 : string.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .putLong(user.getId())
+                .putLong(user.getVersion())
+                .putLong(user.getBirthday().toEpochDay());
+        for (byte[] string : strings) {
+            buffer.putInt(string == null ? NULL_LENGTH : string.length);
+            if (string != null)
+                buffer.put(string);
+        }
+        return buffer.array();
+    }
+
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH)
+            return null;
+        if (!buffer.hasArray()) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+
+    /**
+     * Reads a user, advancing the position of the buffer.
+     */
+    static User decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long version = buffer.getLong();
+        LocalDate birthday = LocalDate.ofEpochDay(buffer.getLong());
+        return new User(id, getString(buffer), getString(buffer), getString(buffer), birthday,
+                getString(buffer), getString(buffer), version);
+    }
+
+}
@@ -0,0 +1,47 @@
+package solution.clear.test.repository;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Base64;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.CursorNotValidException;
+
+/**
+ * Keyset position in the (birthday, id) order of users.
+ * Clients get it as an opaque URL-safe string.
+ */
+
+public record UserCursor(LocalDate birthday, long id) {
+
+    private static final int SIZE = 2 * Long.BYTES;
+
+
+    public static UserCursor of(User user) {
+        return new UserCursor(user.getBirthday(), user.getId());
+    }
+
+
+    public static UserCursor decode(String cursor) {
+        if (cursor == null)
+            return null;
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != SIZE)
+                throw new CursorNotValidException(cursor);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UserCursor(LocalDate.ofEpochDay(buffer.getLong()), buffer.getLong());
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new CursorNotValidException(cursor);
+        }
+    }
+
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE)
+                .putLong(birthday.toEpochDay())
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+}
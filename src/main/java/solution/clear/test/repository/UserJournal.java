@@ -0,0 +1,430 @@
+package solution.clear.test.repository;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import solution.clear.test.entity.User;
+
+/**
+ * Write-ahead log of the in-memory repository.
+ * Records are appended to numbered segment files by a single writer thread,
+ * which writes everything queued since its previous pass at once (group commit).
+ * A snapshot numbered n ({@link UserSnapshot}) holds the state written before
+ * segment n, so startup loads the latest snapshot and replays only the segments from n on.
+ */
+
+@Service
+@ConditionalOnProperty(name = "repository.journal.enabled", havingValue = "true")
+public class UserJournal {
+
+    public enum FsyncPolicy {
+        /** Writers wait until their records are forced to the disk. */
+        ALWAYS,
+        /** The log is forced at most once per interval, writers don't wait. */
+        INTERVAL,
+        /** The operating system decides when the log reaches the disk. */
+        NEVER
+    }
+
+
+    public record Recovery(Collection<User> users, long lastId) {
+
+    }
+
+
+    private record Entry(long position, byte[] body, long segment) {
+
+    }
+
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserJournal.class);
+
+    private static final int SEGMENT_MAGIC = 0x55534A4C;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    @Value("${repository.journal.dir:./data/journal}")
+    private Path dir;
+
+    @Value("${repository.journal.fsync:ALWAYS}")
+    private FsyncPolicy fsync;
+
+    @Value("${repository.journal.fsync-interval-ms:50}")
+    private long fsyncInterval;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong lastPosition = new AtomicLong();
+    private final AtomicLong lastSegment = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+
+    private volatile long writtenPosition;
+    private volatile long openSegment;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel channel;
+
+
+    private Path segmentPath(long segment) {
+        return dir.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+
+    private Path snapshotPath(long segment) {
+        return dir.resolve(SNAPSHOT_PREFIX + segment + SNAPSHOT_SUFFIX);
+    }
+
+
+    private TreeSet<Long> list(String prefix, String suffix) throws IOException {
+        TreeSet<Long> result = new TreeSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .forEach(name -> result.add(Long.parseLong(
+                        name.substring(prefix.length(), name.length() - suffix.length()))));
+        }
+        return result;
+    }
+
+
+    private static ByteBuffer header(int magic) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(FORMAT_VERSION).flip();
+    }
+
+
+    private static boolean checkHeader(ByteBuffer buffer, int magic) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt() == magic
+                && buffer.getInt() == FORMAT_VERSION;
+    }
+
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+    }
+
+
+    private static byte[] body(byte type, byte[] payload) {
+        byte[] body = new byte[payload.length + 1];
+        body[0] = type;
+        System.arraycopy(payload, 0, body, 1, payload.length);
+        return body;
+    }
+
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * Applies the records of the segment, stopping at the first torn or corrupted one.
+     * Returns the greatest id the segment mentions.
+     */
+    protected long replay(long segment, Map<Long, User> users) throws IOException {
+        ByteBuffer buffer = map(segmentPath(segment));
+        long lastId = 0;
+        if (!checkHeader(buffer, SEGMENT_MAGIC))
+            return lastId;
+        while (buffer.remaining() >= 2 * Integer.BYTES) {
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                LOG.warn("Torn record at {} of {}", buffer.position(), segmentPath(segment));
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+            if (checksum(body) != crc) {
+                LOG.warn("Corrupted record at {} of {}", buffer.position(), segmentPath(segment));
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(body, 1, length - 1).slice();
+            if (body[0] == PUT) {
+                User user = UserCodec.decode(record);
+                users.put(user.getId(), user);
+                lastId = Math.max(lastId, user.getId());
+            } else {
+                long id = record.getLong();
+                users.remove(id);
+                lastId = Math.max(lastId, id);
+            }
+        }
+        return lastId;
+    }
+
+
+    /**
+     * Loads the latest snapshot, replays the segments after it
+     * and starts writing a new segment.
+     */
+    public Recovery recover() {
+        try {
+            Files.createDirectories(dir);
+            TreeSet<Long> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            TreeSet<Long> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            Map<Long, User> users = new HashMap<>();
+            long snapshot = snapshots.isEmpty() ? 0 : snapshots.last();
+            long lastId = 0;
+            if (snapshot != 0) {
+                UserSnapshot.Content content = UserSnapshot.read(snapshotPath(snapshot));
+                content.users().forEach(user -> users.put(user.getId(), user));
+                lastId = content.lastId();
+            }
+            for (long segment : segments.tailSet(snapshot))
+                lastId = Math.max(lastId, replay(segment, users));
+            long next = Math.max(snapshot, segments.isEmpty() ? 0 : segments.last()) + 1;
+            LOG.info("Recovered {} users from snapshot {} and {} segments", users.size(), snapshot,
+                    segments.tailSet(snapshot).size());
+            start(next);
+            return new Recovery(users.values(), lastId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private void open(long segment) throws IOException {
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        channel.write(header(SEGMENT_MAGIC));
+        openSegment = segment;
+    }
+
+
+    private void start(long segment) throws IOException {
+        lastSegment.set(segment);
+        open(segment);
+        running = true;
+        writer = new Thread(this::writeLoop, "user-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        long forcedAt = System.nanoTime();
+        boolean dirty = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(fsyncInterval, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+                long position = writtenPosition;
+                for (Entry entry : batch) {
+                    if (entry.body() == null) {
+                        write(buffers);
+                        channel.force(false);
+                        channel.close();
+                        open(entry.segment());
+                    } else {
+                        buffers.add(ByteBuffer.allocate(2 * Integer.BYTES)
+                                .putInt(entry.body().length)
+                                .putInt(checksum(entry.body()))
+                                .flip());
+                        buffers.add(ByteBuffer.wrap(entry.body()));
+                        dirty = true;
+                    }
+                    position = entry.position();
+                }
+                write(buffers);
+                boolean force = fsync == FsyncPolicy.ALWAYS
+                        || fsync == FsyncPolicy.INTERVAL
+                            && System.nanoTime() - forcedAt >= TimeUnit.MILLISECONDS.toNanos(fsyncInterval);
+                if (dirty && force) {
+                    channel.force(false);
+                    forcedAt = System.nanoTime();
+                    dirty = false;
+                }
+                batch.clear();
+                publish(position);
+            } catch (InterruptedException e) {
+                // callers waiting for their records must not wait for a writer that's gone
+                failure = new InterruptedIOException("Journal writer interrupted");
+                publish(writtenPosition);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOG.error("Journal write failed", e);
+                failure = e;
+                publish(writtenPosition);
+                return;
+            }
+        }
+    }
+
+
+    private void write(List<ByteBuffer> buffers) throws IOException {
+        ByteBuffer[] array = buffers.toArray(ByteBuffer[]::new);
+        long remaining = 0;
+        for (ByteBuffer buffer : array)
+            remaining += buffer.remaining();
+        while (remaining > 0)
+            remaining -= channel.write(array);
+        buffers.clear();
+    }
+
+
+    private void publish(long position) {
+        lock.lock();
+        try {
+            writtenPosition = position;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private long enqueue(byte[] body, long segment) {
+        if (failure != null)
+            throw new UncheckedIOException("Journal is not writable", failure);
+        long position = lastPosition.incrementAndGet();
+        queue.add(new Entry(position, body, segment));
+        return position;
+    }
+
+
+    /**
+     * The caller must serialize appends in the order it applies the changes.
+     * Returns the position of the record.
+     */
+    public long appendPut(User user) {
+        return enqueue(body(PUT, UserCodec.encode(user)), 0);
+    }
+
+
+    public long appendDelete(long id) {
+        return enqueue(body(DELETE, ByteBuffer.allocate(Long.BYTES).putLong(id).array()), 0);
+    }
+
+
+    /**
+     * Whether {@link #sync(long)} waits until records are written and forced to the disk.
+     */
+    public boolean syncs() {
+        return fsync == FsyncPolicy.ALWAYS;
+    }
+
+
+    /**
+     * Waits until the record at the position is written, if the fsync policy requires it.
+     * @throws UncheckedIOException if the journal failed before writing it
+     */
+    public void sync(long position) {
+        if (syncs())
+            await(position);
+    }
+
+
+    private void await(long position) {
+        lock.lock();
+        try {
+            while (writtenPosition < position && failure == null)
+                written.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null)
+            throw new UncheckedIOException("Journal is not writable", failure);
+    }
+
+
+    private void awaitSegment(long segment) {
+        lock.lock();
+        try {
+            while (openSegment < segment && failure == null)
+                written.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Switches appends to a new segment and returns its number.
+     * Like appends, it must be ordered with the changes of the caller.
+     */
+    public long rotate() {
+        long segment = lastSegment.incrementAndGet();
+        enqueue(null, segment);
+        return segment;
+    }
+
+
+    /**
+     * Writes the users as the snapshot of the state before the segment
+     * and removes the files it makes obsolete. The users may already include
+     * changes logged in the segment, replaying them again is harmless.
+     */
+    public void snapshot(long segment, long lastId, Iterable<User> users) {
+        Path file = snapshotPath(segment);
+        try {
+            UserSnapshot.write(file, lastId, users);
+            awaitSegment(segment);
+            for (long older : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headSet(segment))
+                Files.deleteIfExists(snapshotPath(older));
+            for (long older : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).headSet(segment))
+                Files.deleteIfExists(segmentPath(older));
+            LOG.info("Snapshot {} written", file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        if (writer == null)
+            return;
+        running = false;
+        writer.join();
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package solution.clear.test.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import solution.clear.test.entity.User;
+
+
+public interface UserJpaRepository extends JpaRepository<User, Long> {
+
+    Optional<User> findByEmailKey(String emailKey);
+
+
+    List<User> findByEmailKeyIsNullAndEmailIsNotNull();
+
+
+    /**
+     * Sets the key without changing the version, the user itself stays the same.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update User u set u.emailKey = :key where u.id = :id")
+    int setEmailKey(@Param("id") long id, @Param("key") String key);
+
+
+    @Query("select u from User u where u.firstNameKey is null and u.firstName is not null "
+            + "or u.lastNameKey is null and u.lastName is not null")
+    List<User> findWithoutNameKeys();
+
+
+    /**
+     * Sets the keys without changing the version, the user itself stays the same.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update User u set u.firstNameKey = :firstNameKey, u.lastNameKey = :lastNameKey where u.id = :id")
+    int setNameKeys(@Param("id") long id, @Param("firstNameKey") String firstNameKey, 
+            @Param("lastNameKey") String lastNameKey);
+
+
+    List<User> findByBirthdayBetweenOrderById(LocalDate from, LocalDate to);
+
+
+    /**
+     * The pattern is a prefix followed by %, with a backslash escaping wildcards of the prefix.
+     * It's matched against the indexed name keys, so the database scans only the names with the prefix.
+     */
+    @Query("select u from User u where u.firstNameKey like :pattern escape '\\' "
+            + "or u.lastNameKey like :pattern escape '\\' "
+            + "order by case when u.firstNameKey like :pattern escape '\\' then u.firstNameKey "
+            + "else u.lastNameKey end, u.id")
+    List<User> findByNamePattern(@Param("pattern") String pattern, Pageable pageable);
+
+
+    @Query("select u from User u where u.birthday <= :to "
+            + "and (u.birthday > :birthday or (u.birthday = :birthday and u.id > :id)) "
+            + "order by u.birthday, u.id")
+    List<User> findPage(@Param("birthday") LocalDate birthday, @Param("id") long id, 
+            @Param("to") LocalDate to, Pageable pageable);
+
+}
@@ -0,0 +1,33 @@
+package solution.clear.test.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives the rows of a database created by an older version the lookup keys
+ * it stores now. It runs after all beans are created and before the web server starts,
+ * rows that already have their keys are left alone.
+ */
+
+@Component
+@Profile("jpa")
+public class UserKeyBackfill implements SmartInitializingSingleton {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserKeyBackfill.class);
+
+    @Autowired
+    private JpaUserRepository repository;
+
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        int filled = repository.backfillKeys();
+        if (filled > 0)
+            LOG.info("Derived the keys of {} users stored without them", filled);
+    }
+
+}
@@ -1,107 +1,111 @@
 package solution.clear.test.repository;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
-import org.springframework.stereotype.Service;
 import solution.clear.test.entity.User;
-
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
 
 /**
- * It's a fake repository.
- * It had been made for test only.
- * Thread-unsafe.
+ * Storage of users. Users are kept in memory by default,
+ * the jpa profile stores them in an embedded database
+ * and the columnar profile in columns outside the heap.
+ * Emails are unique regardless of case.
  */
 
+public interface UserRepository {
+
+    boolean exists(long id);
+
+
+    boolean notExists(long id);
+
+
+    Optional<User> findById(long id);
+
+
+    /**
+     * Finds the user by email regardless of case and surrounding spaces.
+     */
+    Optional<User> findByEmail(String email);
+
+
+    long count();
+
+
+    /**
+     * Returns all users ordered by id.
+     */
+    List<User> findAll();
+
+
+    /**
+     * Stores the user under its id, or as a new user if the id is 0 or unknown.
+     * @throws EmailConflictException if another user has the email
+     */
+    User save(User user);
+
+
+    /**
+     * Returns null if the user doesn't exist.
+     * @throws EmailConflictException if another user has the email
+     */
+    User update(User user);
+
+
+    /**
+     * Replaces the user only if its stored version is still expectedVersion.
+     * Returns null if the user doesn't exist.
+     * @throws VersionConflictException if the user was changed since that version
+     * @throws EmailConflictException if another user has the email
+     */
+    User update(User user, long expectedVersion);
+
+
+    /**
+     * Returns null if the user doesn't exist.
+     */
+    User deleteById(long id);
+
+
+    /**
+     * Saves all users as new ones. Returns the saved users,
+     * with null in place of users whose email another user has.
+     */
+    List<User> saveAll(List<User> newUsers);
+
+
+    /**
+     * Returns the updated users, with null in place of users that don't exist
+     * or whose email another user has.
+     */
+    List<User> updateAll(List<User> updatedUsers);
+
+
+    /**
+     * Returns the deleted users, with null in place of ids that don't exist.
+     */
+    List<User> deleteAllById(List<Long> deletedIds);
+
+
+    /**
+     * Returns up to limit users whose first or last name starts with the prefix
+     * regardless of case, ordered by the matching name and id.
+     */
+    List<User> findByNamePrefix(String prefix, int limit);
+
+
+    /**
+     * Returns users with birthday between from and to inclusive, ordered by id.
+     */
+    List<User> findByBirthdayAfterAndBefore(LocalDate from, LocalDate to);
+
+
+    /**
+     * Returns up to limit users with birthday between from and to,
+     * ordered by (birthday, id) and positioned strictly after the cursor.
+     */
+    List<User> findPage(LocalDate from, LocalDate to, UserCursor after, int limit);
 
-@Service
-public class UserRepository {
-
-    private AtomicLong ids = new AtomicLong();
-    private List<User> users = new ArrayList<>();
-    
-    
-    public void set(List<User> newUsers) {
-        users = newUsers;
-    }
-    
-    
-    protected int getIndexById(long id) {
-        int index = -1;
-        for(User user : users) {
-            index++;
-            if (user.getId() == id)
-                break;
-        }
-        return index;
-    }
-    
-    
-    protected boolean dateIsBetween(LocalDate date, LocalDate from, LocalDate to) {
-        return date.compareTo(from) >= 0 && date.compareTo(to) <= 0;
-    }
-    
-    
-    public boolean exists(long id) {
-        int index = getIndexById(id);
-        return index >= 0;
-    }
-    
-    
-    public boolean notExists(long id) {
-        int index = getIndexById(id);
-        return index < 0;
-    }
-    
-    
-    public Optional<User> findById(long id) {
-        int index = getIndexById(id);
-        return index >= 0 ? Optional.of(users.get(index)) : Optional.empty();
-    }
-    
-    
-    public List<User> findAll() {
-        return users;
-    }
-    
-    
-    public User save(User user) {
-        long id = user.getId();
-        int index = id == 0 ? -1 : getIndexById(id);
-        if (index >= 0)
-            users.set(index, user);
-        else {
-            user.setId(ids.addAndGet(1)); 
-            users.add(user);
-        }
-        return user;
-    }
-    
-    
-    public User update(User user) {
-        long id = user.getId();
-        int index = id == 0 ? -1 : getIndexById(id);
-        if (index >= 0) {
-            users.set(index, user);
-            return user;
-        }
-        return null;
-    }
-    
-    
-    public User deleteById(long id) {
-        int index = getIndexById(id);
-        return index >= 0 ? users.remove(index) : null;
-    }
-
-
-    public List<User> findByBirthdayAfterAndBefore(LocalDate from, LocalDate to) {
-        List<User> result = new ArrayList<>();
-        users.stream().filter(user -> dateIsBetween(user.getBirthday(), from, to))
-                .forEach(result::add);
-        return result;
-    }
-    
 }
@@ -0,0 +1,156 @@
+package solution.clear.test.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import solution.clear.test.entity.User;
+
+/**
+ * Binary file of users split into independently decodable chunks.
+ * Layout: header (magic, version, last id), chunks of users in the
+ * {@link UserCodec} form, a directory of (offset, length, count) per chunk
+ * and a trailer (directory offset, chunk count, magic).
+ * Chunks are memory-mapped and decoded in parallel on load.
+ */
+
+final class UserSnapshot {
+
+    record Content(List<User> users, long lastId) {
+
+    }
+
+
+    private static final int MAGIC = 0x5553534E;
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int DIRECTORY_ENTRY_SIZE = Long.BYTES + 2 * Integer.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + 2 * Integer.BYTES;
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+
+    private UserSnapshot() {
+    }
+
+
+    static void write(Path file, long lastId, Iterable<User> users) throws IOException {
+        write(file, lastId, users, CHUNK_SIZE);
+    }
+
+
+    /**
+     * Writes to a temporary file first, so the file is either absent or complete.
+     */
+    static void write(Path file, long lastId, Iterable<User> users, int chunkSize) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer directory = ByteBuffer.allocate(DIRECTORY_ENTRY_SIZE * 64);
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            int count = 0;
+            long offset = HEADER_SIZE;
+            writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION)
+                    .putLong(lastId).flip());
+            for (User user : users) {
+                byte[] record = UserCodec.encode(user);
+                if (chunk.remaining() < record.length && count > 0) {
+                    directory = addEntry(directory, offset, chunk.position(), count);
+                    offset += chunk.position();
+                    writeFully(out, chunk.flip());
+                    chunk.clear();
+                    count = 0;
+                }
+                if (chunk.remaining() < record.length)
+                    chunk = ByteBuffer.allocate(record.length);
+                chunk.put(record);
+                count++;
+            }
+            if (count > 0) {
+                directory = addEntry(directory, offset, chunk.position(), count);
+                offset += chunk.position();
+                writeFully(out, chunk.flip());
+            }
+            int chunks = directory.position() / DIRECTORY_ENTRY_SIZE;
+            writeFully(out, directory.flip());
+            writeFully(out, ByteBuffer.allocate(TRAILER_SIZE).putLong(offset).putInt(chunks).putInt(MAGIC)
+                    .flip());
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    private static ByteBuffer addEntry(ByteBuffer directory, long offset, int length, int count) {
+        if (directory.remaining() < DIRECTORY_ENTRY_SIZE)
+            directory = ByteBuffer.allocate(directory.capacity() * 2).put(directory.flip());
+        return directory.putLong(offset).putInt(length).putInt(count);
+    }
+
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            out.write(buffer);
+    }
+
+
+    static Content read(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE)
+                throw new IOException("Not a snapshot: " + file);
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            ByteBuffer trailer = in.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+                throw new IOException("Not a snapshot: " + file);
+            long lastId = header.getLong();
+            long directoryOffset = trailer.getLong();
+            int chunks = trailer.getInt();
+            if (trailer.getInt() != MAGIC)
+                throw new IOException("Incomplete snapshot: " + file);
+            ByteBuffer directory = in.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                    (long) chunks * DIRECTORY_ENTRY_SIZE);
+            long[] offsets = new long[chunks];
+            int[] lengths = new int[chunks];
+            int[] counts = new int[chunks];
+            for (int i = 0; i < chunks; i++) {
+                offsets[i] = directory.getLong();
+                lengths[i] = directory.getInt();
+                counts[i] = directory.getInt();
+            }
+            User[][] decoded = new User[chunks][];
+            try {
+                IntStream.range(0, chunks).parallel().forEach(i ->
+                    decoded[i] = decode(in, offsets[i], lengths[i], counts[i]));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<User> users = new ArrayList<>(Arrays.stream(counts).sum());
+            for (User[] chunk : decoded)
+                users.addAll(Arrays.asList(chunk));
+            return new Content(users, lastId);
+        }
+    }
+
+
+    private static User[] decode(FileChannel in, long offset, int length, int count) {
+        try {
+            ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            User[] users = new User[count];
+            for (int i = 0; i < count; i++)
+                users[i] = UserCodec.decode(chunk);
+            return users;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package solution.clear.test.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills an empty in-memory repository from a {@link UserSnapshot} file
+ * (journal snapshots have the same format). It runs after all beans are 
+ * created and before the web server starts, and marks the application
+ * as refusing traffic while it loads. Boot switches readiness to accepting
+ * traffic once the application is ready, after the web server has started.
+ */
+
+@Component
+@Profile("!jpa & !columnar")
+@ConditionalOnProperty(name = "repository.snapshot.file")
+public class UserSnapshotLoader implements SmartInitializingSingleton {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserSnapshotLoader.class);
+
+    @Autowired
+    private InMemoryUserRepository repository;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @Value("${repository.snapshot.file}")
+    private Path file;
+
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+        if (repository.size() > 0) {
+            LOG.info("Repository already holds {} users, {} is not loaded", repository.size(), file);
+        } else {
+            long start = System.nanoTime();
+            try {
+                UserSnapshot.Content content = UserSnapshot.read(file);
+                repository.set(content.users(), content.lastId());
+                LOG.info("Loaded {} users from {} in {} ms", content.users().size(), file,
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // makes the loaded users durable if the journal is enabled
+            repository.checkpoint();
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package solution.clear.test.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The latest birthday old enough for the age limit, as an epoch day.
+ * It's computed once a day, when the clock passes midnight, so a check is one comparison.
+ * A birthday is valid if the limit in years after it isn't later than today,
+ * users born on February 29 come of age on February 28.
+ */
+
+class AgeCutoff {
+
+    private record Day(long lastBirthday, long until) {
+
+    }
+
+
+    private final Clock clock;
+
+    private final long limit;
+
+    private volatile Day day = new Day(Long.MIN_VALUE, Long.MIN_VALUE);
+
+
+    AgeCutoff(Clock clock, long limit) {
+        this.clock = clock;
+        this.limit = limit;
+    }
+
+
+    boolean allows(LocalDate birthday) {
+        Day current = day;
+        if (clock.millis() >= current.until())
+            day = current = today();
+        return birthday.toEpochDay() <= current.lastBirthday();
+    }
+
+
+    private Day today() {
+        ZoneId zone = clock.getZone();
+        LocalDate today = LocalDate.now(clock);
+        LocalDate last = today.minusYears(limit);
+        while (!last.plusDays(1).plusYears(limit).isAfter(today))
+            last = last.plusDays(1);
+        return new Day(last.toEpochDay(), today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+
+}
@@ -0,0 +1,22 @@
+package solution.clear.test.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of one item of a batch request, in the same position as the item.
+ */
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchResult(int status, Long id, String error) {
+
+    public static BatchResult success(HttpStatus status, long id) {
+        return new BatchResult(status.value(), id, null);
+    }
+
+
+    public static BatchResult failure(HttpStatus status, String error) {
+        return new BatchResult(status.value(), null, error);
+    }
+
+}
@@ -0,0 +1,9 @@
+package solution.clear.test.service;
+
+/**
+ * A user serialized to JSON, with the version it was serialized at.
+ */
+
+public record UserJson(long version, byte[] json) {
+
+}
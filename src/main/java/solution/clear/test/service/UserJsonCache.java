@@ -0,0 +1,88 @@
+package solution.clear.test.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongFunction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import solution.clear.test.entity.User;
+
+/**
+ * Bounded read-through cache of users serialized by the web ObjectMapper, by id.
+ * A user is loaded and serialized once until the service invalidates it after a write.
+ * The map only holds the future of a load, the first reader of an id loads it outside the map
+ * and the others wait for the future, so no thread blocks on the map while the repository is read.
+ * An invalidation drops a load in progress with its future, so a stale load can't outlive the write.
+ */
+
+@Component
+public class UserJsonCache {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${user.response.cache-size:10000}")
+    protected int cacheSize;
+
+    private AsyncCache<Long, UserJson> users;
+
+
+    @PostConstruct
+    protected void init() {
+        users = Caffeine.newBuilder().maximumSize(cacheSize).buildAsync();
+    }
+
+
+    UserJson get(long id, LongFunction<User> loader) {
+        CompletableFuture<UserJson> load = new CompletableFuture<>();
+        CompletableFuture<UserJson> json = users.get(id, (key, executor) -> load);
+        if (json == load) {
+            try {
+                load.complete(serialize(loader.apply(id)));
+            } catch (Throwable e) {
+                load.completeExceptionally(e);
+            }
+        }
+        try {
+            return json.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw e;
+        }
+    }
+
+
+    private UserJson serialize(User user) {
+        try {
+            return new UserJson(user.getVersion(), objectMapper.writeValueAsBytes(user));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    void invalidate(long id) {
+        users.synchronous().invalidate(id);
+    }
+
+
+    void invalidateAll(Iterable<Long> ids) {
+        users.synchronous().invalidateAll(ids);
+    }
+
+
+    public long size() {
+        return users.synchronous().estimatedSize();
+    }
+
+}
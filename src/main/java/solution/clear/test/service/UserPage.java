@@ -0,0 +1,13 @@
+package solution.clear.test.service;
+
+import java.util.List;
+import solution.clear.test.entity.User;
+import solution.clear.test.repository.UserCursor;
+
+/**
+ * One page of a keyset search. The next cursor is null on the last page.
+ */
+
+public record UserPage(List<User> users, UserCursor next) {
+
+}
@@ -0,0 +1,202 @@
+package solution.clear.test.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonpatch.JsonPatchException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import solution.clear.test.entity.User;
+
+/**
+ * Plan of a JSON Patch shape compiled for the fixed fields of a user: add, replace, remove
+ * and test of /email, /firstName, /lastName, /address, /phone and replacing /birthday
+ * become direct field access on a copy of the user. The plan depends only on the
+ * operations and paths, so patches of the same shape share it and differ in values.
+ * Patches with anything else aren't compiled and are left to the generic JsonPatch.
+ */
+
+final class UserPatch {
+
+    private static final Object NOT_COMPILED = new Object();
+
+    private enum Op {
+        ADD, REPLACE, REMOVE, TEST;
+
+        static Op of(String name) {
+            if (name == null)
+                return null;
+            return switch (name) {
+                case "add" -> ADD;
+                case "replace" -> REPLACE;
+                case "remove" -> REMOVE;
+                case "test" -> TEST;
+                default -> null;
+            };
+        }
+    }
+
+
+    private enum Field {
+        EMAIL(User::getEmail, (user, value) -> user.setEmail((String) value)),
+        FIRST_NAME(User::getFirstName, (user, value) -> user.setFirstName((String) value)),
+        LAST_NAME(User::getLastName, (user, value) -> user.setLastName((String) value)),
+        BIRTHDAY(User::getBirthday, (user, value) -> user.setBirthday((LocalDate) value)),
+        ADDRESS(User::getAddress, (user, value) -> user.setAddress((String) value)),
+        PHONE(User::getPhone, (user, value) -> user.setPhone((String) value));
+
+        final Function<User, Object> getter;
+        final BiConsumer<User, Object> setter;
+
+
+        Field(Function<User, Object> getter, BiConsumer<User, Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+
+        static Field of(String path) {
+            if (path == null)
+                return null;
+            return switch (path) {
+                case "/email" -> EMAIL;
+                case "/firstName" -> FIRST_NAME;
+                case "/lastName" -> LAST_NAME;
+                case "/birthday" -> BIRTHDAY;
+                case "/address" -> ADDRESS;
+                case "/phone" -> PHONE;
+                default -> null;
+            };
+        }
+
+
+        /**
+         * Returns NOT_COMPILED for values the generic path would convert or reject.
+         */
+        Object parse(JsonNode value) {
+            if (this == BIRTHDAY) {
+                if (!value.isTextual())
+                    return NOT_COMPILED;
+                try {
+                    return LocalDate.parse(value.textValue());
+                } catch (DateTimeParseException e) {
+                    return NOT_COMPILED;
+                }
+            }
+            if (value.isNull())
+                return null;
+            return value.isTextual() ? value.textValue() : NOT_COMPILED;
+        }
+    }
+
+
+    /**
+     * The patch with its values converted for the fields, ready to be applied.
+     */
+    record Bound(UserPatch plan, Object[] values) {
+
+        /**
+         * Returns a patched copy of the user.
+         */
+        User apply(User user) throws JsonPatchException {
+            return plan.apply(user, values);
+        }
+
+    }
+
+
+    /**
+     * Stands for shapes left to the generic path.
+     */
+    static final UserPatch GENERIC = new UserPatch(new Op[0], new Field[0]);
+
+    private final Op[] ops;
+    private final Field[] fields;
+
+
+    private UserPatch(Op[] ops, Field[] fields) {
+        this.ops = ops;
+        this.fields = fields;
+    }
+
+
+    /**
+     * Returns the operations and paths of the patch, which decide its plan,
+     * or null if the patch is malformed.
+     */
+    static String shape(JsonNode patch) {
+        if (patch == null || !patch.isArray())
+            return null;
+        StringBuilder shape = new StringBuilder(patch.size() * 24);
+        for (JsonNode node : patch) {
+            String op = node.path("op").textValue();
+            String path = node.path("path").textValue();
+            if (op == null || path == null)
+                return null;
+            shape.append(op).append(' ').append(path).append('\n');
+        }
+        return shape.toString();
+    }
+
+
+    /**
+     * Returns the plan of the patch shape, or GENERIC if it needs the generic path.
+     */
+    static UserPatch plan(JsonNode patch) {
+        if (patch == null || !patch.isArray())
+            return GENERIC;
+        Op[] ops = new Op[patch.size()];
+        Field[] fields = new Field[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            JsonNode node = patch.get(i);
+            Op op = Op.of(node.path("op").textValue());
+            Field field = Field.of(node.path("path").textValue());
+            if (op == null || field == null || field == Field.BIRTHDAY && (op == Op.REMOVE || op == Op.TEST))
+                return GENERIC;
+            ops[i] = op;
+            fields[i] = field;
+        }
+        return new UserPatch(ops, fields);
+    }
+
+
+    /**
+     * Converts the values of a patch of this shape, returns null if some value needs the generic path.
+     */
+    Bound bind(JsonNode patch) {
+        if (this == GENERIC)
+            return null;
+        Object[] values = new Object[ops.length];
+        for (int i = 0; i < values.length; i++) {
+            if (ops[i] == Op.REMOVE)
+                continue;
+            JsonNode json = patch.get(i).get("value");
+            if (json == null || (values[i] = fields[i].parse(json)) == NOT_COMPILED)
+                return null;
+        }
+        return new Bound(this, values);
+    }
+
+
+    /**
+     * Returns null if the patch needs the generic path.
+     */
+    static Bound compile(JsonNode patch) {
+        return plan(patch).bind(patch);
+    }
+
+
+    private User apply(User user, Object[] values) throws JsonPatchException {
+        User patched = new User(user.getId(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.getBirthday(), user.getAddress(), user.getPhone(), user.getVersion());
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] != Op.TEST)
+                fields[i].setter.accept(patched, values[i]);
+            else if (!Objects.equals(fields[i].getter.apply(patched), values[i]))
+                throw new JsonPatchException("value differs from expectations");
+        }
+        return patched;
+    }
+
+}
@@ -0,0 +1,50 @@
+package solution.clear.test.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache of patch plans by shape, so repeated shapes are only bound to their values.
+ * Shapes left to the generic path are remembered too.
+ */
+
+@Component
+public class UserPatchCache {
+
+    /**
+     * Longer patches are rare and are planned without caching.
+     */
+    private static final int MAX_CACHED_OPERATIONS = 16;
+
+    @Value("${patch.plan.cache-size:1000}")
+    protected int cacheSize;
+
+    private Cache<String, UserPatch> plans;
+
+
+    @PostConstruct
+    protected void init() {
+        plans = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+
+    /**
+     * Returns null if the patch needs the generic path.
+     */
+    UserPatch.Bound compile(JsonNode patch) {
+        String shape = patch != null && patch.size() <= MAX_CACHED_OPERATIONS ? UserPatch.shape(patch) : null;
+        if (shape == null)
+            return UserPatch.compile(patch);
+        return plans.get(shape, key -> UserPatch.plan(patch)).bind(patch);
+    }
+
+
+    public long size() {
+        return plans.estimatedSize();
+    }
+
+}
@@ -0,0 +1,215 @@
+package solution.clear.test.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import solution.clear.test.entity.User;
+
+/**
+ * Cache of birthday range search results, each sorted by id like the repository returns them.
+ * Results aren't flushed on writes, the service reports every changed user and only the results
+ * holding the user or whose range contains its new birthday get a new copy with the changes of the batch.
+ * Reports of concurrent writes may come out of commit order, so a changed user is read again
+ * from the repository under the lock and the results take the user as it is then, never an older one.
+ * Bounded by the number of cached users and evicted after not being read for a while.
+ * Hits and misses are published as the search.results cache metrics.
+ */
+
+@Component
+public class UserRangeCache {
+
+    /**
+     * The user stored under the id, or null if it's deleted.
+     */
+    private record Change(long id, User user) {
+
+    }
+
+
+    private record Range(LocalDate from, LocalDate to) {
+
+        boolean contains(LocalDate birthday) {
+            return !birthday.isBefore(from) && !birthday.isAfter(to);
+        }
+
+    }
+
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${search.cache.max-users:100000}")
+    protected long maxUsers;
+
+    @Value("${search.cache.expire-after-access:10m}")
+    protected Duration expireAfterAccess;
+
+    private Cache<Range, List<User>> results;
+
+    /**
+     * Serializes storing loaded results with applying changes.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of changes applied, a result loaded across a change isn't stored.
+     */
+    private volatile long changes;
+
+
+    @PostConstruct
+    protected void init() {
+        results = Caffeine.newBuilder()
+                .maximumWeight(maxUsers)
+                .<Range, List<User>>weigher((range, users) -> users.size() + 1)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, results, "search.results");
+    }
+
+
+    List<User> get(LocalDate from, LocalDate to, Supplier<List<User>> loader) {
+        Range range = new Range(from, to);
+        List<User> users = results.getIfPresent(range);
+        if (users != null)
+            return users;
+        long seen = changes;
+        users = Collections.unmodifiableList(loader.get());
+        lock.lock();
+        try {
+            if (changes == seen)
+                results.asMap().putIfAbsent(range, users);
+        } finally {
+            lock.unlock();
+        }
+        return users;
+    }
+
+
+    /**
+     * Applies users stored by the repository to the cached results, as the repository has them now.
+     */
+    void changed(List<User> users, LongFunction<Optional<User>> current) {
+        lock.lock();
+        try {
+            changes++;
+            List<Change> batch = new ArrayList<>(users.size());
+            for (User user : users)
+                if (affectsAny(user.getId(), user))
+                    batch.add(new Change(user.getId(), current.apply(user.getId()).orElse(null)));
+            apply(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Applies users deleted from the repository to the cached results. A deleted id is never reused.
+     */
+    void removed(List<Long> ids) {
+        lock.lock();
+        try {
+            changes++;
+            apply(ids.stream().map(id -> new Change(id, null)).toList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private boolean affectsAny(long id, User user) {
+        for (Map.Entry<Range, List<User>> entry : results.asMap().entrySet())
+            if (affects(entry.getKey(), entry.getValue(), new Change(id, user)))
+                return true;
+        return false;
+    }
+
+
+    /**
+     * Rebuilds every result the batch affects once, with its changes merged in.
+     */
+    private void apply(List<Change> batch) {
+        if (batch.isEmpty())
+            return;
+        // an id changed twice in a batch is applied once, as it is now
+        List<Change> sorted = new ArrayList<>(batch.size());
+        for (Change change : batch.stream().sorted(Comparator.comparingLong(Change::id)).toList())
+            if (sorted.isEmpty() || sorted.getLast().id() != change.id())
+                sorted.add(change);
+        for (Map.Entry<Range, List<User>> entry : results.asMap().entrySet()) {
+            List<Change> patches = new ArrayList<>();
+            for (Change change : sorted)
+                if (affects(entry.getKey(), entry.getValue(), change))
+                    patches.add(change);
+            if (!patches.isEmpty())
+                results.asMap().computeIfPresent(entry.getKey(), (range, users) -> merge(range, users, patches));
+        }
+    }
+
+
+    private static boolean affects(Range range, List<User> users, Change change) {
+        return indexOf(users, change.id()) >= 0
+                || change.user() != null && range.contains(change.user().getBirthday());
+    }
+
+
+    /**
+     * Returns a copy of the result with the changes, sorted by id, merged in:
+     * each user is replaced, inserted or removed.
+     */
+    private static List<User> merge(Range range, List<User> users, List<Change> changes) {
+        List<User> result = new ArrayList<>(users.size() + changes.size());
+        int next = 0;
+        for (Change change : changes) {
+            int index = indexOf(users, change.id());
+            int end = index >= 0 ? index : -index - 1;
+            result.addAll(users.subList(next, end));
+            next = index >= 0 ? index + 1 : end;
+            if (change.user() != null && range.contains(change.user().getBirthday()))
+                result.add(change.user());
+        }
+        result.addAll(users.subList(next, users.size()));
+        return Collections.unmodifiableList(result);
+    }
+
+
+    private static int indexOf(List<User> users, long id) {
+        int low = 0;
+        int high = users.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = users.get(middle).getId();
+            if (middleId < id)
+                low = middle + 1;
+            else if (middleId > id)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+
+    public long size() {
+        return results.estimatedSize();
+    }
+
+}
@@ -5,16 +5,31 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import solution.clear.test.annotation.ConsistentDateRange;
 import solution.clear.test.entity.User;
 import solution.clear.test.exception.AgeNotValidException;
+import solution.clear.test.exception.EmailConflictException;
 import solution.clear.test.exception.UserNotFoundException;
+import solution.clear.test.exception.VersionConflictException;
+import solution.clear.test.repository.UserCursor;
 import solution.clear.test.repository.UserRepository;
 
 @Service
@@ -24,10 +39,31 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    private UserPatchCache patchCache;
+    
+    @Autowired
+    private UserJsonCache jsonCache;
+    
+    @Autowired
+    private UserRangeCache rangeCache;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private Clock clock;
+    
     @Value("${ageLimit}")
     protected long ageLimit;
     
-    private ObjectMapper objectMapper = new ObjectMapper(); 
+    private AgeCutoff ageCutoff;
+    
+    @Value("${search.export.chunk:1000}")
+    protected int exportChunk;
     
     
     protected void userIdExists(long id) {
@@ -36,12 +72,49 @@ public class UserService {
     }
 
     
+    @PostConstruct
+    protected void init() {
+        ageCutoff = new AgeCutoff(clock, ageLimit);
+    }
+    
+    
     protected void ageValid(LocalDate birthday) {
-        if (birthday.plusYears(ageLimit).isAfter(LocalDate.now())) 
+        if (!ageCutoff.allows(birthday)) 
             throw new AgeNotValidException(ageLimit);
     }
     
     
+    /**
+     * Brings the caches up to date with users just stored. Every write of the service reports here.
+     */
+    protected void changed(List<User> users) {
+        for (User user : users)
+            jsonCache.invalidate(user.getId());
+        rangeCache.changed(users, userRepository::findById);
+    }
+    
+    
+    protected void removed(List<Long> ids) {
+        jsonCache.invalidateAll(ids);
+        rangeCache.removed(ids);
+    }
+    
+    
+    /**
+     * Returns the validation errors of the user, or null if it's valid.
+     */
+    protected String findViolations(User user) {
+        if (user == null)
+            return "User must not be null";
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty())
+            return violations.stream()
+                    .map(cv -> cv.getPropertyPath() + " " + cv.getInvalidValue() + " : " + cv.getMessage())
+                    .collect(Collectors.joining("; "));
+        return ageCutoff.allows(user.getBirthday()) ? null : AgeNotValidException.message(ageLimit);
+    }
+    
+    
     public User getUser(long id) {
         User user;
         if (id <= 0 || (user = userRepository.findById(id).orElse(null)) == null) 
@@ -50,71 +123,294 @@ public class UserService {
     }
     
     
+    public User getUserByEmail(String email) {
+        return userRepository.findByEmail(email).orElseThrow(() -> new UserNotFoundException(email));
+    }
+    
+    
+    /**
+     * Returns the user serialized, from the cache unless it was changed since.
+     */
+    public UserJson getUserJson(long id) {
+        return jsonCache.get(id, this::getUser);
+    }
+    
+    
     public User create(User user) {
         ageValid(user.getBirthday());
         user.setId(0);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        changed(List.of(saved));
+        return saved;
     }
     
     
     public User create(String email, String firstName, String lastName, LocalDate birthday,
             String address, String phone) {
         ageValid(birthday);
-        return userRepository.save(new User(0, email, firstName, lastName, birthday, address, phone));
+        User saved = userRepository.save(new User(0, email, firstName, lastName, birthday, address, phone));
+        changed(List.of(saved));
+        return saved;
     }
 
 
     public User update(long id, String email, String firstName, String lastName,
             LocalDate birthday, String address, String phone) {
-        User user = getUser(id);
-        if (email != null)
-            user.setEmail(email);
-        if (firstName != null)
-            user.setFirstName(firstName);
-        if (lastName != null)
-            user.setLastName(lastName);
-        if (birthday != null) {
+        return update(id, email, firstName, lastName, birthday, address, phone, null);
+    }
+
+
+    /**
+     * Returns the version a write conditioned on any of the versions expects, null for any version.
+     * Of several versions it's the one the user has now, the write still fails if the user changes after.
+     * @throws VersionConflictException if the user has none of the versions
+     */
+    public Long expectedVersion(long id, Set<Long> versions) {
+        if (versions == null)
+            return null;
+        if (versions.isEmpty())
+            throw new VersionConflictException();
+        if (versions.size() == 1)
+            return versions.iterator().next();
+        long current = getUser(id).getVersion();
+        if (!versions.contains(current))
+            throw new VersionConflictException();
+        return current;
+    }
+
+
+    /**
+     * Replaces the given fields. With an expected version the update fails
+     * if the user was changed since, without it a concurrent change is
+     * merged by applying the fields again to the newer user.
+     */
+    public User update(long id, String email, String firstName, String lastName,
+            LocalDate birthday, String address, String phone, Long expectedVersion) {
+        if (birthday != null)
             ageValid(birthday);
-            user.setBirthday(birthday);
+        while (true) {
+            User user = getUser(id);
+            user = new User(id,
+                    email != null ? email : user.getEmail(),
+                    firstName != null ? firstName : user.getFirstName(),
+                    lastName != null ? lastName : user.getLastName(),
+                    birthday != null ? birthday : user.getBirthday(),
+                    address != null ? address : user.getAddress(),
+                    phone != null ? phone : user.getPhone(),
+                    user.getVersion());
+            try {
+                return replace(user, expectedVersion);
+            } catch (VersionConflictException e) {
+                if (expectedVersion != null)
+                    throw e;
+            }
         }
-        if (address != null)
-            user.setAddress(address);
-        if (phone != null)
-            user.setPhone(phone);
-        return userRepository.save(user);
     }
     
 
     public User update(User user) {
+        return update(user, null);
+    }
+    
+
+    public User update(User user, Long expectedVersion) {
         userIdExists(user.getId());
         ageValid(user.getBirthday());
-        return userRepository.save(user);
+        if (expectedVersion != null)
+            return replace(user, expectedVersion);
+        User saved = userRepository.save(user);
+        changed(List.of(saved));
+        return saved;
+    }
+    
+    
+    /**
+     * Stores the user if its version is still the expected one, 
+     * or the version the user was read with.
+     */
+    protected User replace(User user, Long expectedVersion) {
+        User updated = userRepository.update(user, 
+                expectedVersion != null ? expectedVersion : user.getVersion());
+        if (updated == null)
+            throw new UserNotFoundException(user.getId());
+        changed(List.of(updated));
+        return updated;
     }
     
     
     public User patch(long id, JsonPatch patch) throws JsonPatchException, JsonProcessingException {
-        JsonNode patched = patch.apply(objectMapper.convertValue(getUser(id), JsonNode.class));
-        User user = objectMapper.treeToValue(patched, User.class);
-        ageValid(user.getBirthday());
-        return userRepository.save(user);
+        return patch(id, patch, null);
+    }
+    
+    
+    public User patch(long id, JsonPatch patch, Long expectedVersion) 
+            throws JsonPatchException, JsonProcessingException {
+        return patch(id, user -> objectMapper.treeToValue(
+                patch.apply(objectMapper.convertValue(user, JsonNode.class)), User.class), expectedVersion);
+    }
+    
+    
+    /**
+     * Patches of the plain user fields are applied to a copy of the user directly
+     * by a plan cached for their shape, other patches go through the generic JsonPatch.
+     */
+    public User patch(long id, JsonNode patch, Long expectedVersion) throws JsonPatchException, IOException {
+        UserPatch.Bound compiled = patchCache.compile(patch);
+        if (compiled == null)
+            return patch(id, JsonPatch.fromJson(patch), expectedVersion);
+        return patch(id, compiled::apply, expectedVersion);
+    }
+    
+    
+    private interface Patcher {
+        
+        User apply(User user) throws JsonPatchException, JsonProcessingException;
+        
+    }
+    
+    
+    /**
+     * Applies the patch like {@link #update(long, String, String, String, LocalDate, String, String, Long)}
+     * applies fields, the id and the version can't be patched.
+     */
+    protected User patch(long id, Patcher patcher, Long expectedVersion) 
+            throws JsonPatchException, JsonProcessingException {
+        while (true) {
+            User current = getUser(id);
+            User user = patcher.apply(current);
+            ageValid(user.getBirthday());
+            user.setId(id);
+            user.setVersion(current.getVersion());
+            try {
+                return replace(user, expectedVersion);
+            } catch (VersionConflictException e) {
+                if (expectedVersion != null)
+                    throw e;
+            }
+        }
     }
     
     
     public User delete(long id) {
         userIdExists(id);
-        return userRepository.deleteById(id);
+        User deleted = userRepository.deleteById(id);
+        removed(List.of(id));
+        return deleted;
+    }
+    
+    
+    public List<BatchResult> createAll(List<User> users) {
+        BatchResult[] results = new BatchResult[users.size()];
+        List<User> valid = new ArrayList<>(users.size());
+        List<Integer> positions = new ArrayList<>(users.size());
+        for (int i = 0; i < results.length; i++) {
+            User user = users.get(i);
+            String violations = findViolations(user);
+            if (violations != null) {
+                results[i] = BatchResult.failure(HttpStatus.BAD_REQUEST, violations);
+                continue;
+            }
+            user.setId(0);
+            valid.add(user);
+            positions.add(i);
+        }
+        List<User> saved = userRepository.saveAll(valid);
+        changed(saved.stream().filter(Objects::nonNull).toList());
+        for (int i = 0; i < saved.size(); i++)
+            results[positions.get(i)] = saved.get(i) != null
+                    ? BatchResult.success(HttpStatus.CREATED, saved.get(i).getId())
+                    : BatchResult.failure(HttpStatus.CONFLICT, EmailConflictException.message(valid.get(i).getEmail()));
+        return Arrays.asList(results);
     }
     
     
+    public List<BatchResult> updateAll(List<User> users) {
+        BatchResult[] results = new BatchResult[users.size()];
+        List<User> valid = new ArrayList<>(users.size());
+        List<Integer> positions = new ArrayList<>(users.size());
+        for (int i = 0; i < results.length; i++) {
+            String violations = findViolations(users.get(i));
+            if (violations != null) {
+                results[i] = BatchResult.failure(HttpStatus.BAD_REQUEST, violations);
+                continue;
+            }
+            valid.add(users.get(i));
+            positions.add(i);
+        }
+        List<User> updated = userRepository.updateAll(valid);
+        changed(updated.stream().filter(Objects::nonNull).toList());
+        for (int i = 0; i < updated.size(); i++) {
+            long id = valid.get(i).getId();
+            if (updated.get(i) != null)
+                results[positions.get(i)] = BatchResult.success(HttpStatus.OK, id);
+            else if (userRepository.exists(id))
+                results[positions.get(i)] = BatchResult.failure(HttpStatus.CONFLICT, 
+                        EmailConflictException.message(valid.get(i).getEmail()));
+            else
+                results[positions.get(i)] = BatchResult.failure(HttpStatus.NOT_FOUND, UserNotFoundException.message(id));
+        }
+        return Arrays.asList(results);
+    }
+    
+    
+    public List<BatchResult> deleteAll(List<Long> ids) {
+        List<User> deleted = userRepository.deleteAllById(ids);
+        removed(ids);
+        List<BatchResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            long id = ids.get(i);
+            results.add(deleted.get(i) != null 
+                    ? BatchResult.success(HttpStatus.NO_CONTENT, id)
+                    : BatchResult.failure(HttpStatus.NOT_FOUND, UserNotFoundException.message(id)));
+        }
+        return results;
+    }
+    
+    
+    /**
+     * Results are cached by range and kept up to date by the writes, they must not be modified.
+     */
     @ConsistentDateRange
     public List<User> search(LocalDate from, LocalDate to) {
-        if (from == null && to == null)
-            return userRepository.findAll();
+        LocalDate lower = from == null ? LocalDate.MIN : from;
+        LocalDate upper = to == null ? LocalDate.MAX : to;
+        return rangeCache.get(lower, upper, () -> from == null && to == null 
+                ? userRepository.findAll() 
+                : userRepository.findByBirthdayAfterAndBefore(lower, upper));
+    }
+
+
+    /**
+     * Returns up to limit users whose first or last name starts with the prefix, for typeahead.
+     */
+    public List<User> suggest(String prefix, int limit) {
+        return userRepository.findByNamePrefix(prefix, limit);
+    }
+    
+    
+    @ConsistentDateRange
+    public UserPage search(LocalDate from, LocalDate to, UserCursor after, int limit) {
         if (from == null)
             from = LocalDate.MIN;
         if (to == null)
             to = LocalDate.MAX;
-        return userRepository.findByBirthdayAfterAndBefore(from, to);
+        List<User> users = userRepository.findPage(from, to, after, limit + 1);
+        if (users.size() <= limit)
+            return new UserPage(users, null);
+        users = users.subList(0, limit);
+        return new UserPage(users, UserCursor.of(users.get(limit - 1)));
+    }
+    
+    
+    /**
+     * Lazily walks the search result page by page, so only one chunk 
+     * of users is held in memory at a time.
+     */
+    @ConsistentDateRange
+    public Stream<User> stream(LocalDate from, LocalDate to) {
+        return Stream.iterate(search(from, to, null, exportChunk), Objects::nonNull,
+                    page -> page.next() == null ? null : search(from, to, page.next(), exportChunk))
+                .flatMap(page -> page.users().stream());
     }
 
 }
@@ -0,0 +1,12 @@
+package solution.clear.test.controller;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * The same scenario as {@link IntegrationTest}, run against ColumnarUserRepository.
+ */
+
+@ActiveProfiles("columnar")
+class ColumnarIntegrationTest extends IntegrationTest {
+
+}
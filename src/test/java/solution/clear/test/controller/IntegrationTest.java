@@ -15,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import solution.clear.test.entity.User;
@@ -90,7 +91,7 @@ class IntegrationTest {
     private long testCreateAndGetId(String userName, String birthday) throws Exception {
         User user = json2user(mvc
                 .perform(post(REQUEST_MAPPING)
-                        .param(EMAIL_FIELD, GOOD_EMAIL)
+                        .param(EMAIL_FIELD, userName.replace(" ", "") + "@gmail.com")
                         .param(FIRST_NAME_FIELD, userName)
                         .param(LAST_NAME_FIELD, "last name")
                         .param(BIRTHDAY_FIELD, birthday))
@@ -107,6 +108,11 @@ class IntegrationTest {
     }
 
 
+    private String getNewEmail(long id) {
+        return "EMAIL" + id + "@GOOD";
+    }
+
+
     private void testCreate(long... ids) throws Exception {
         List<Long> result = new ArrayList<>();
         for (long id : ids)
@@ -120,7 +126,8 @@ class IntegrationTest {
             mvc.perform(post(REQUEST_MAPPING + "/new")
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .content(user2json(
-                            new User(0, GOOD_EMAIL, getFirstName(id), "last name", getLimitBirthday(), null, null))))
+                            new User(0, "user" + id + "@gmail.com", getFirstName(id), "last name", 
+                                    getLimitBirthday(), null, null))))
                 .andDo(print()).andExpect(status().isCreated())
                 .andExpect(content().contentType("application/json")).andReturn().getResponse()
                 .getContentAsString());
@@ -137,7 +144,7 @@ class IntegrationTest {
 
 
     private void testUpdate(long id) throws Exception {
-        User user = new User(id, "EMAIL@GOOD", "FIRST", "LAST", LocalDate.of(2000, 01, 01), "Anywhere", "103");
+        User user = new User(id, getNewEmail(id), "FIRST", "LAST", LocalDate.of(2000, 01, 01), "Anywhere", "103");
         assertEquals(user, json2user(
                 mvc.perform(put(REQUEST_MAPPING)
                             .contentType(MediaType.APPLICATION_JSON_VALUE)
@@ -152,11 +159,11 @@ class IntegrationTest {
     private void testUpdateSomeFields(long id) throws Exception {
         User user = json2user(
                 mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
-                            .param(EMAIL_FIELD, "EMAIL@GOOD"))
+                            .param(EMAIL_FIELD, getNewEmail(id)))
                     .andDo(print()).andExpect(status().isOk())
                     .andExpect(content().contentType("application/json"))
                     .andReturn().getResponse().getContentAsString());
-        assertEquals("EMAIL@GOOD", user.getEmail());
+        assertEquals(getNewEmail(id), user.getEmail());
         user = json2user(
                 mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
                             .param(FIRST_NAME_FIELD, FIRST_NAME_FIELD)
@@ -177,11 +184,12 @@ class IntegrationTest {
         User user = json2user(
                 mvc.perform(patch(REQUEST_MAPPING + "/{id}", id)
                             .contentType("application/json-patch+json")
-                            .content("[{\"op\":\"replace\",\"path\":\"/email\",\"value\":\"EMAIL@GOOD\"}]"))
+                            .content("[{\"op\":\"replace\",\"path\":\"/email\",\"value\":\"" 
+                                    + getNewEmail(id) + "\"}]"))
                     .andDo(print()).andExpect(status().isOk())
                     .andExpect(content().contentType("application/json"))
                     .andReturn().getResponse().getContentAsString());
-        assertEquals("EMAIL@GOOD", user.getEmail());
+        assertEquals(getNewEmail(id), user.getEmail());
         user = json2user(
                 mvc.perform(patch(REQUEST_MAPPING + "/{id}", id)
                             .contentType("application/json-patch+json")
@@ -201,6 +209,61 @@ class IntegrationTest {
     }
 
 
+    void testConditionalUpdate(long id) throws Exception {
+        String etag = mvc.perform(get(REQUEST_MAPPING + "/{id}", id))
+                    .andExpect(status().isOk())
+                    .andExpect(header().exists(HttpHeaders.ETAG))
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(get(REQUEST_MAPPING + "/{id}", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+        String newEtag = mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
+                            .header(HttpHeaders.IF_MATCH, etag)
+                            .param("address", "Somewhere"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.address").value("Somewhere"))
+                    .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, newEtag);
+        mvc.perform(get(REQUEST_MAPPING + "/{id}", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, newEtag))
+            .andExpect(jsonPath("$.address").value("Somewhere"));
+        mvc.perform(patch(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, etag)
+                    .contentType("application/json-patch+json")
+                    .content("[{\"op\":\"replace\",\"path\":\"/address\",\"value\":\"Nowhere\"}]"))
+            .andDo(print())
+            .andExpect(status().isPreconditionFailed());
+        String lastEtag = mvc.perform(patch(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, newEtag)
+                    .contentType("application/json-patch+json")
+                    .content("[{\"op\":\"replace\",\"path\":\"/address\",\"value\":\"Nowhere\"}]"))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.address").value("Nowhere"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        // If-Match compares strongly, so a weak tag of the current version doesn't match
+        mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, "W/" + lastEtag)
+                    .param("address", "Elsewhere"))
+            .andExpect(status().isPreconditionFailed());
+        lastEtag = mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, etag + ", W/\"x\", " + lastEtag)
+                    .param("address", "Elsewhere"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.address").value("Elsewhere"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, etag + ", " + newEtag)
+                    .param("address", "Nowhere"))
+            .andExpect(status().isPreconditionFailed());
+        mvc.perform(put(REQUEST_MAPPING + "/{id}", id)
+                    .header(HttpHeaders.IF_MATCH, "*")
+                    .param("address", "Nowhere"))
+            .andExpect(status().isOk());
+    }
+
+
     void compare(long id1, long id2) throws Exception {
         User user1 = json2user(
                 mvc.perform(get(REQUEST_MAPPING + "/{id}", id1))
@@ -214,10 +277,37 @@ class IntegrationTest {
                     .andExpect(status().isOk())
                     .andExpect(content().contentType("application/json"))
                     .andReturn().getResponse().getContentAsString());
+        // emails are unique
+        user2.setEmail(user1.getEmail());
         assertEquals(user1, user2);
     }
 
 
+    void testEmail(long id, long otherId) throws Exception {
+        mvc.perform(get(REQUEST_MAPPING + "/by-email")
+                    .param(EMAIL_FIELD, " " + getNewEmail(id).toLowerCase() + " "))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(header().exists(HttpHeaders.ETAG))
+            .andExpect(jsonPath("$.id").value(id));
+        mvc.perform(get(REQUEST_MAPPING + "/by-email")
+                    .param(EMAIL_FIELD, "nobody@good"))
+            .andExpect(status().isNotFound());
+        mvc.perform(post(REQUEST_MAPPING)
+                    .param(EMAIL_FIELD, getNewEmail(id).toLowerCase())
+                    .param(FIRST_NAME_FIELD, "duplicate")
+                    .param(LAST_NAME_FIELD, "last name")
+                    .param(BIRTHDAY_FIELD, GOOD_BIRTHDAY))
+            .andDo(print())
+            .andExpect(status().isConflict());
+        mvc.perform(put(REQUEST_MAPPING + "/{id}", otherId)
+                    .param(EMAIL_FIELD, getNewEmail(id)))
+            .andDo(print())
+            .andExpect(status().isConflict());
+        assertNotEquals(getNewEmail(id), getUser(otherId).getEmail());
+    }
+
+
     void testSearch() throws Exception {
         List<User> users = new ArrayList<>();
         for (long id = 1; id <= 4; id++)
@@ -257,6 +347,70 @@ class IntegrationTest {
     }
 
 
+    void testSearchPage() throws Exception {
+        List<User> users = List.of(getUser(1), getUser(3), getUser(2), getUser(4));
+        var firstPage = mvc.perform(get(REQUEST_MAPPING)
+                            .param("limit", "3"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(header().exists(UserController.NEXT_CURSOR_HEADER))
+                    .andReturn().getResponse();
+        assertEquals(users.subList(0, 3), json2userList(firstPage.getContentAsString()));
+        List<User> lastPage = json2userList(
+                mvc.perform(get(REQUEST_MAPPING)
+                            .param("cursor", firstPage.getHeader(UserController.NEXT_CURSOR_HEADER))
+                            .param("limit", "3"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist(UserController.NEXT_CURSOR_HEADER))
+                    .andReturn().getResponse().getContentAsString());
+        assertEquals(users.subList(3, 4), lastPage);
+    }
+
+
+    void testSuggest() throws Exception {
+        List<User> found = json2userList(
+                mvc.perform(get(REQUEST_MAPPING + "/suggest")
+                            .param("q", "FIR"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+        assertEquals(List.of(2L, 1L, 3L), found.stream().map(User::getId).toList());
+        found = json2userList(
+                mvc.perform(get(REQUEST_MAPPING + "/suggest")
+                            .param("q", " last")
+                            .param("limit", "2"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+        assertEquals(List.of(2L, 4L), found.stream().map(User::getId).toList());
+        mvc.perform(get(REQUEST_MAPPING + "/suggest")
+                    .param("q", "fir%"))
+            .andExpect(status().isNoContent());
+        mvc.perform(get(REQUEST_MAPPING + "/suggest")
+                    .param("q", " "))
+            .andExpect(status().isBadRequest());
+    }
+
+
+    void testExport() throws Exception {
+        List<User> users = List.of(getUser(1), getUser(3), getUser(2), getUser(4));
+        var result = mvc.perform(get(REQUEST_MAPPING)
+                            .accept(MediaType.APPLICATION_NDJSON))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+        String[] lines = mvc.perform(asyncDispatch(result))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                    .andReturn().getResponse().getContentAsString().split("\n");
+        List<User> exported = new ArrayList<>();
+        for (String line : lines)
+            exported.add(json2user(line));
+        assertEquals(users, exported);
+    }
+
+
     void testDelete(long... ids) throws Exception {
         for (long id : ids) {
             User user = json2user(
@@ -270,6 +424,47 @@ class IntegrationTest {
     }
 
 
+    void testBatch(long firstId) throws Exception {
+        List<User> users = List.of(
+                new User(0, GOOD_EMAIL, getFirstName(firstId), "last name", LocalDate.of(1980, 1, 1), null, null),
+                new User(0, GOOD_EMAIL, "too young", "last name", LocalDate.now(), null, null),
+                new User(0, "other" + GOOD_EMAIL, getFirstName(firstId + 1), "last name", LocalDate.of(1990, 1, 1), 
+                        null, null),
+                new User(0, GOOD_EMAIL.toUpperCase(), "duplicate", "last name", LocalDate.of(1990, 1, 1), null, null));
+        mvc.perform(post(REQUEST_MAPPING + "/batch")
+                    .contentType(MediaType.APPLICATION_JSON_VALUE)
+                    .content(objectMapper.writeValueAsString(users)))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].status").value(201))
+            .andExpect(jsonPath("$[0].id").value(firstId))
+            .andExpect(jsonPath("$[1].status").value(400))
+            .andExpect(jsonPath("$[2].status").value(201))
+            .andExpect(jsonPath("$[2].id").value(firstId + 1))
+            .andExpect(jsonPath("$[3].status").value(409));
+        testGet(firstId);
+        testGet(firstId + 1);
+        User updated = new User(firstId, "EMAIL@GOOD", "FIRST", "LAST", LocalDate.of(2000, 1, 1), null, null);
+        User missing = new User(firstId + 100, "EMAIL@GOOD", "FIRST", "LAST", LocalDate.of(2000, 1, 1), null, null);
+        mvc.perform(put(REQUEST_MAPPING + "/batch")
+                    .contentType(MediaType.APPLICATION_JSON_VALUE)
+                    .content(objectMapper.writeValueAsString(List.of(updated, missing))))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].status").value(200))
+            .andExpect(jsonPath("$[1].status").value(404));
+        assertEquals(updated, getUser(firstId));
+        mvc.perform(delete(REQUEST_MAPPING + "/batch")
+                    .contentType(MediaType.APPLICATION_JSON_VALUE)
+                    .content(objectMapper.writeValueAsString(List.of(firstId, firstId + 1, firstId + 100))))
+            .andDo(print())
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].status").value(204))
+            .andExpect(jsonPath("$[1].status").value(204))
+            .andExpect(jsonPath("$[2].status").value(404));
+    }
+
+
     @Test
     void testScenario() throws Exception {
         testEmpty();
@@ -280,9 +475,16 @@ class IntegrationTest {
         testUpdateSomeFields(3);
         testPatch(1);
         compare(1, 3);
+        testEmail(1, 3);
+        testConditionalUpdate(2);
         testSearch();
+        testSearchPage();
+        testSuggest();
+        testExport();
         testDelete(1, 2, 3, 4);
         testEmpty();
+        testBatch(5);
+        testEmpty();
     }
 
 }
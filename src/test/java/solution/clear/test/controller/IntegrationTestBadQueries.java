@@ -191,4 +191,20 @@ class IntegrationTestBadQueries {
         .andExpect(content().string(containsString("End date must be after begin date.")));
     }
     
+    
+    @Test
+    void testBadCursor() throws Exception {
+        mvc.perform(get(REQUEST_MAPPING)
+                    .param("cursor", "not-a-cursor"))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().contentType("application/json"))
+        .andExpect(content().string(containsString("Cursor (not-a-cursor) not valid")));
+        mvc.perform(get(REQUEST_MAPPING)
+                    .param("limit", "0"))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().contentType("application/json"));
+    }
+    
 }
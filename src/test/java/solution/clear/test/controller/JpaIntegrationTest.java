@@ -0,0 +1,53 @@
+package solution.clear.test.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import solution.clear.test.entity.User;
+import solution.clear.test.repository.JpaUserRepository;
+import solution.clear.test.repository.UserJpaRepository;
+
+/**
+ * The same scenario as {@link IntegrationTest}, run against JpaUserRepository.
+ */
+
+@ActiveProfiles("jpa")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:users")
+class JpaIntegrationTest extends IntegrationTest {
+
+    @Autowired
+    private JpaUserRepository repository;
+
+    @Autowired
+    private UserJpaRepository jpaRepository;
+
+    @Autowired
+    private TransactionTemplate transaction;
+
+
+    @Test
+    void testBackfillKeys() {
+        User user = repository.save(new User(0, "Stored@Before.com", " Backfilled", "Last", 
+                LocalDate.of(2000, 1, 1), null, null));
+        // a row of a database created before the key columns
+        transaction.executeWithoutResult(status -> {
+            jpaRepository.setEmailKey(user.getId(), null);
+            jpaRepository.setNameKeys(user.getId(), null, null);
+        });
+        assertTrue(repository.findByEmail("stored@before.com").isEmpty());
+        assertTrue(repository.findByNamePrefix("backf", 10).isEmpty());
+        
+        assertEquals(2, repository.backfillKeys());
+        assertEquals(user.getId(), repository.findByEmail("stored@before.com").orElseThrow().getId());
+        assertEquals(List.of(user.getId()), 
+                repository.findByNamePrefix("backf", 10).stream().map(User::getId).toList());
+        assertEquals(user.getVersion(), repository.findById(user.getId()).orElseThrow().getVersion());
+        assertEquals(0, repository.backfillKeys());
+    }
+
+}
@@ -0,0 +1,39 @@
+package solution.clear.test.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@TestPropertySource(properties = "management.endpoints.web.exposure.include=prometheus")
+class MetricsTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+
+    @Test
+    void testPrometheus() throws Exception {
+        mvc.perform(get("/api/users/{id}", 1000)).andExpect(status().isNotFound());
+        mvc.perform(get("/api/users")).andExpect(status().isNoContent());
+        mvc.perform(get("/actuator/prometheus"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(containsString("repository_operations_seconds_count{exception=\"none\",operation=\"findAll\"")))
+            .andExpect(content().string(containsString("service_operations_seconds_count{exception=\"UserNotFoundException\",operation=\"getUserJson\"")))
+            .andExpect(content().string(containsString("api_exceptions_total{exception=\"UserNotFoundException\",handler=\"handleUserNotFound\"")))
+            .andExpect(content().string(containsString("cache_gets_total{cache=\"search.results\",result=\"miss\"")))
+            .andExpect(content().string(containsString("repository_strings_lookups_total{result=\"hit\"")))
+            .andExpect(content().string(containsString("repository_strings_saved_bytes_total ")))
+            .andExpect(content().string(containsString("repository_users ")));
+    }
+
+}
@@ -0,0 +1,148 @@
+package solution.clear.test.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import solution.clear.test.entity.User;
+
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+class ReactiveIntegrationTest {
+
+    @Autowired
+    private WebTestClient client;
+    
+    private static final String REQUEST_MAPPING = "/api/users";
+    
+    private static final LocalDate FROM = LocalDate.of(1950, 1, 1);
+    private static final LocalDate TO = LocalDate.of(1950, 12, 31);
+
+
+    private User create(int i) {
+        return client.post().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("email", "reactive" + i + "@mail.com")
+                        .queryParam("firstName", "first" + i)
+                        .queryParam("lastName", "last" + i)
+                        .queryParam("birthday", FROM.plusDays(i).toString())
+                        .build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("ETag", "\"0\"")
+                .expectBody(User.class).returnResult().getResponseBody();
+    }
+
+
+    @Test
+    void testReactiveApi() {
+        User first = create(3);
+        create(2);
+        create(1);
+        
+        client.get().uri(REQUEST_MAPPING + "/{id}", first.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"0\"")
+                .expectBody(User.class).isEqualTo(first);
+        client.get().uri(REQUEST_MAPPING + "/{id}", first.getId())
+                .ifNoneMatch("\"0\"")
+                .exchange()
+                .expectStatus().isNotModified();
+        
+        List<User> all = client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", FROM.toString()).queryParam("to", TO.toString()).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class).returnResult().getResponseBody();
+        // ordered by id like the servlet API
+        assertEquals(3, all.size());
+        assertEquals(first, all.get(0));
+        
+        List<User> streamed = client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", FROM.toString()).queryParam("to", TO.toString()).build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(User.class).getResponseBody().collectList().block();
+        // exports stream by (birthday, id), the reverse of ids here
+        assertEquals(all.reversed(), streamed);
+        client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", FROM.toString()).queryParam("to", TO.toString()).build())
+                .header("Accept", "application/x-ndjson;q=0.9, application/json;q=0.5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON);
+        
+        String next = client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", FROM.toString()).queryParam("to", TO.toString())
+                        .queryParam("limit", 2).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class).hasSize(2)
+                .returnResult().getResponseHeaders().getFirst(UserController.NEXT_CURSOR_HEADER);
+        client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", FROM.toString()).queryParam("to", TO.toString())
+                        .queryParam("cursor", next).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(UserController.NEXT_CURSOR_HEADER)
+                .expectBodyList(User.class).isEqualTo(List.of(first));
+        
+        client.patch().uri(REQUEST_MAPPING + "/{id}", first.getId())
+                .contentType(MediaType.valueOf("application/json-patch+json"))
+                .header("If-Match", "\"0\"")
+                .bodyValue("[{\"op\": \"replace\", \"path\": \"/firstName\", \"value\": \"patched\"}]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"1\"")
+                .expectBody().jsonPath("$.firstName").isEqualTo("patched");
+        
+        client.put().uri(uri -> uri.path(REQUEST_MAPPING + "/{id}").queryParam("phone", "123").build(first.getId()))
+                .header("If-Match", "\"0\"")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        client.put().uri(uri -> uri.path(REQUEST_MAPPING + "/{id}").queryParam("phone", "123").build(first.getId()))
+                .header("If-Match", "\"0\"", "\"1\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2\"");
+        
+        client.delete().uri(REQUEST_MAPPING + "/{id}", first.getId())
+                .exchange()
+                .expectStatus().isNoContent();
+        client.get().uri(REQUEST_MAPPING + "/{id}", first.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$['Request exception']").exists();
+    }
+
+
+    @Test
+    void testBadQueries() {
+        client.get().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("from", TO.toString()).queryParam("to", FROM.toString()).build())
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.get().uri(uri -> uri.path(REQUEST_MAPPING).queryParam("from", "not a date").build())
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.post().uri(uri -> uri.path(REQUEST_MAPPING)
+                        .queryParam("email", "bad")
+                        .queryParam("firstName", "first")
+                        .queryParam("lastName", "last")
+                        .queryParam("birthday", FROM.toString())
+                        .build())
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.post().uri(uri -> uri.path(REQUEST_MAPPING).queryParam("email", "a@b.com").build())
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+}
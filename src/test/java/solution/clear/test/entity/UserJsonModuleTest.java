@@ -0,0 +1,65 @@
+package solution.clear.test.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class UserJsonModuleTest {
+
+    private final ObjectMapper beans = Jackson2ObjectMapperBuilder.json().build();
+    
+    private final ObjectMapper module = Jackson2ObjectMapperBuilder.json().modulesToInstall(new UserJsonModule()).build();
+    
+    private final List<User> users = List.of(
+            new User(1, "email@email.com", "First", "Last", LocalDate.of(2000, 2, 29), "Address", "+380960000000", 3),
+            new User(0, "\"quoted\"@email.com", "Фамилия", "", LocalDate.of(1, 1, 1), null, null),
+            new User(Long.MAX_VALUE, null, null, null, null, null, null, -1));
+
+
+    @Test
+    void testSameJson() throws Exception {
+        assertEquals(beans.writeValueAsString(users), module.writeValueAsString(users));
+        assertEquals(beans.valueToTree(users), module.valueToTree(users));
+        JsonNode tree = beans.valueToTree(users.get(0));
+        assertEquals(users.get(0).getBirthday(), module.treeToValue(tree, User.class).getBirthday());
+        
+        ObjectMapper timestamps = new ObjectMapper().registerModule(new UserJsonModule());
+        assertEquals(new ObjectMapper().writeValueAsString(users), timestamps.writeValueAsString(users));
+    }
+
+
+    @Test
+    void testSameUsers() throws Exception {
+        byte[] json = beans.writeValueAsBytes(users);
+        List<User> read = module.readValue(json, new TypeReference<List<User>>() {});
+        assertEquals(users, read);
+        for (int i = 0; i < users.size(); i++) {
+            assertEquals(users.get(i).getId(), read.get(i).getId());
+            assertEquals(users.get(i).getVersion(), read.get(i).getVersion());
+        }
+    }
+
+
+    @Test
+    void testCoercions() throws Exception {
+        String json = "{\"id\":\"5\",\"email\":7,\"birthday\":[2000,1,2],\"unknown\":{\"a\":[1]},\"version\":null}";
+        User bean = beans.readValue(json, User.class);
+        User read = module.readValue(json, User.class);
+        assertEquals(bean, read);
+        assertEquals(5, read.getId());
+        assertEquals("7", read.getEmail());
+        assertEquals(LocalDate.of(2000, 1, 2), read.getBirthday());
+        
+        assertThrows(InvalidFormatException.class, () -> module.readValue("{\"id\":\"x\"}", User.class));
+        assertThrows(MismatchedInputException.class, () -> module.readValue("{\"birthday\":\"2000-02-30\"}", User.class));
+        assertThrows(MismatchedInputException.class, () -> module.readValue("[1]", User.class));
+    }
+
+}
@@ -0,0 +1,318 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
+
+class ColumnarUserRepositoryTest {
+
+    private ColumnarUserRepository repository = new ColumnarUserRepository(4);
+
+
+    private static User newUser(String name, LocalDate birthday) {
+        return new User(0, name + "@mail.com", name, "Last", birthday, null, null);
+    }
+
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).toList();
+    }
+
+
+    @Test
+    void testSaveFindDelete() {
+        User user = repository.save(new User(0, "first@mail.com", "First", "Ünicode ✓", LocalDate.of(2000, 1, 1),
+                "", "+380"));
+        assertEquals(1, user.getId());
+        assertTrue(repository.exists(1));
+        assertFalse(repository.notExists(1));
+        User found = repository.findById(1).orElseThrow();
+        assertNotSame(user, found);
+        assertEquals(user, found);
+        assertEquals(1, found.getId());
+        assertEquals("Ünicode ✓", found.getLastName());
+        assertEquals("", found.getAddress());
+        assertNull(repository.update(newUser("second", LocalDate.of(2000, 1, 1))));
+        assertEquals(user, repository.deleteById(1));
+        assertTrue(repository.findById(1).isEmpty());
+        assertNull(repository.deleteById(1));
+        assertEquals(0, repository.count());
+    }
+
+
+    @Test
+    void testConditionalUpdate() {
+        User user = repository.save(newUser("first", LocalDate.of(2000, 1, 1)));
+        assertEquals(0, user.getVersion());
+        User changed = newUser("second", LocalDate.of(2000, 1, 1));
+        changed.setId(user.getId());
+        assertEquals(1, repository.update(changed, 0).getVersion());
+        User stale = newUser("third", LocalDate.of(2000, 1, 1));
+        stale.setId(user.getId());
+        assertThrows(VersionConflictException.class, () -> repository.update(stale, 0));
+        User stored = repository.findById(user.getId()).orElseThrow();
+        assertEquals("second", stored.getFirstName());
+        assertEquals(1, stored.getVersion());
+        assertNull(repository.update(newUser("fourth", LocalDate.of(2000, 1, 1)), 0));
+    }
+
+
+    @Test
+    void testUniqueEmail() {
+        User first = repository.save(newUser("first", LocalDate.of(2000, 1, 1)));
+        assertEquals(first, repository.findByEmail(" FIRST@mail.com").orElseThrow());
+        User duplicate = newUser("second", LocalDate.of(2000, 1, 1));
+        duplicate.setEmail("First@Mail.com");
+        assertThrows(EmailConflictException.class, () -> repository.save(duplicate));
+        assertEquals(1, repository.count());
+
+        User second = repository.save(newUser("second", LocalDate.of(2000, 1, 1)));
+        User changed = newUser("second", LocalDate.of(2000, 1, 1));
+        changed.setId(second.getId());
+        changed.setEmail("first@mail.com");
+        assertThrows(EmailConflictException.class, () -> repository.update(changed));
+        assertEquals(Arrays.asList(null, second), repository.updateAll(List.of(changed, second)));
+
+        changed.setEmail("third@mail.com");
+        repository.update(changed);
+        assertTrue(repository.findByEmail("second@mail.com").isEmpty());
+        assertEquals(second.getId(), repository.findByEmail("third@mail.com").orElseThrow().getId());
+        assertEquals(second.getId() + 1, repository.save(newUser("second", LocalDate.of(2000, 1, 1))).getId());
+
+        repository.deleteById(first.getId());
+        assertTrue(repository.findByEmail("first@mail.com").isEmpty());
+        List<User> saved = repository.saveAll(List.of(newUser("first", LocalDate.of(2000, 1, 1)),
+                newUser("FIRST", LocalDate.of(2000, 1, 1)), newUser("third", LocalDate.of(2000, 1, 1))));
+        assertNotNull(saved.get(0));
+        assertNull(saved.get(1));
+        assertNull(saved.get(2));
+        assertEquals(saved.get(0).getId(), repository.findByEmail("first@mail.com").orElseThrow().getId());
+    }
+
+
+    @Test
+    void testSetKeepsIdSequence() {
+        User user = newUser("first", LocalDate.of(2000, 1, 1));
+        user.setId(10);
+        repository.set(List.of(user));
+        assertEquals(11, repository.save(newUser("second", LocalDate.of(2000, 1, 1))).getId());
+        assertEquals(List.of(10L, 11L), ids(repository.findAll()));
+        assertEquals(10, repository.findByEmail("first@mail.com").orElseThrow().getId());
+        User sparse = newUser("sparse", LocalDate.of(2000, 1, 1));
+        sparse.setId(Long.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> repository.set(List.of(user, sparse)));
+        assertEquals(2, repository.count());
+    }
+
+
+    @Test
+    void testHugeIdsAreNotFound() {
+        // with fewer than 4 segments the offset of these ids in the rows by id column overflows
+        for (int segments : new int[] {1, 2}) {
+            ColumnarUserRepository small = new ColumnarUserRepository(segments);
+            small.save(newUser("first", LocalDate.of(2000, 1, 1)));
+            for (long id : new long[] {Long.MAX_VALUE, Long.MAX_VALUE - 1, Long.MAX_VALUE / 2}) {
+                assertTrue(small.findById(id).isEmpty());
+                assertFalse(small.exists(id));
+                assertTrue(small.notExists(id));
+                assertNull(small.deleteById(id));
+            }
+            User user = newUser("second", LocalDate.of(2000, 1, 1));
+            user.setId(Long.MAX_VALUE);
+            assertEquals(2, small.save(user).getId());
+            assertEquals(2, small.count());
+        }
+    }
+
+
+    @Test
+    void testIdsBeyondTheIndex() {
+        assertThrows(IllegalArgumentException.class, () -> repository.set(List.of(), Long.MAX_VALUE - 1));
+        AtomicLong ids = (AtomicLong) ReflectionTestUtils.getField(repository, "ids");
+        ids.set(4 * ColumnarSegment.MAX_ID_INDEX);
+        User first = newUser("first", LocalDate.of(2000, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> repository.save(first));
+        assertThrows(IllegalArgumentException.class, 
+                () -> repository.saveAll(List.of(newUser("second", LocalDate.of(2000, 1, 1)))));
+        // the emails aren't kept by users that weren't stored
+        ids.set(0);
+        assertEquals(1, repository.save(newUser("first", LocalDate.of(2000, 1, 1))).getId());
+        User second = newUser("second", LocalDate.of(2000, 1, 1));
+        assertEquals(2, repository.saveAll(List.of(second)).get(0).getId());
+    }
+
+
+    @Test
+    void testFindByBirthday() {
+        repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("b", LocalDate.of(1990, 1, 1)));
+        repository.save(newUser("c", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("d", LocalDate.of(2010, 1, 1)));
+        assertEquals(List.of(1L, 3L), ids(repository.findByBirthdayAfterAndBefore(
+                LocalDate.of(2000, 1, 1), LocalDate.of(2000, 1, 1))));
+        assertEquals(List.of(1L, 2L, 3L), ids(repository.findByBirthdayAfterAndBefore(
+                LocalDate.MIN, LocalDate.of(2005, 1, 1))));
+
+        User moved = newUser("b", LocalDate.of(2010, 1, 1));
+        moved.setId(2);
+        repository.update(moved);
+        repository.deleteById(4);
+        assertEquals(List.of(1L, 3L), ids(repository.findByBirthdayAfterAndBefore(
+                LocalDate.MIN, LocalDate.of(2005, 1, 1))));
+        assertEquals(List.of(2L), ids(repository.findByBirthdayAfterAndBefore(
+                LocalDate.of(2005, 1, 1), LocalDate.MAX)));
+        assertThrows(IllegalArgumentException.class, () -> repository.save(newUser("e", LocalDate.MIN)));
+        assertEquals(3, repository.count());
+    }
+
+
+    @Test
+    void testFindPage() {
+        repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("b", LocalDate.of(1990, 1, 1)));
+        repository.save(newUser("c", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("d", LocalDate.of(2010, 1, 1)));
+        List<User> page = repository.findPage(LocalDate.MIN, LocalDate.MAX, null, 2);
+        assertEquals(List.of(2L, 1L), ids(page));
+        page = repository.findPage(LocalDate.MIN, LocalDate.MAX, UserCursor.of(page.get(1)), 2);
+        assertEquals(List.of(3L, 4L), ids(page));
+        assertEquals(List.of(), repository.findPage(LocalDate.MIN, LocalDate.of(2005, 1, 1),
+                UserCursor.of(page.get(1)), 2));
+    }
+
+
+    @Test
+    void testFindByNamePrefix() {
+        User ann = repository.save(new User(0, "ann@mail.com", "Ann", "Annis", LocalDate.of(2000, 1, 1), null, null));
+        User anna = repository.save(new User(0, "anna@mail.com", " anna", "Smith", LocalDate.of(2000, 1, 1), null, null));
+        User bob = repository.save(new User(0, "bob@mail.com", "Bob", "Annan", LocalDate.of(2000, 1, 1), null, null));
+        User enzo = repository.save(new User(0, "enzo@mail.com", "Énzo", "Ånnan", LocalDate.of(2000, 1, 1), null, null));
+        assertEquals(List.of(ann, anna, bob), repository.findByNamePrefix(" AN", 10));
+        assertEquals(List.of(ann, anna), repository.findByNamePrefix("ann", 2));
+        assertEquals(List.of(bob), repository.findByNamePrefix("annan", 10));
+        assertEquals(List.of(enzo), repository.findByNamePrefix("ÉN", 10));
+        assertEquals(List.of(enzo), repository.findByNamePrefix("å", 10));
+        assertEquals(List.of(), repository.findByNamePrefix("c", 10));
+
+        User renamed = new User(bob.getId(), "bob@mail.com", "Bob", "Carter", LocalDate.of(2000, 1, 1), null, null);
+        repository.update(renamed);
+        repository.deleteById(anna.getId());
+        assertEquals(List.of(ann), repository.findByNamePrefix("an", 10));
+        assertEquals(List.of(renamed), repository.findByNamePrefix("car", 10));
+    }
+
+
+    /**
+     * Random writes against a map by id, enough of them to grow the email table
+     * and to compact the blob a few times.
+     */
+    @Test
+    void testRandomWrites() {
+        SplittableRandom random = new SplittableRandom(7);
+        Map<Long, User> expected = new TreeMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            int operation = random.nextInt(3);
+            String name = "user" + random.nextInt(5_000);
+            User user = new User(0, name + "@mail.com", name, "x".repeat(random.nextInt(200)),
+                    LocalDate.ofEpochDay(random.nextInt(20_000)), null, null);
+            if (operation == 0 || expected.isEmpty()) {
+                try {
+                    repository.save(user);
+                    expected.put(user.getId(), user);
+                } catch (EmailConflictException e) {
+                    assertTrue(expected.values().stream().anyMatch(other -> other.getEmail().equals(user.getEmail())));
+                }
+            } else {
+                List<Long> ids = new ArrayList<>(expected.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                if (operation == 1) {
+                    user.setEmail(expected.get(id).getEmail());
+                    user.setId(id);
+                    expected.put(id, repository.update(user));
+                } else {
+                    assertEquals(expected.remove(id), repository.deleteById(id));
+                }
+            }
+        }
+        assertEquals(new ArrayList<>(expected.values()), repository.findAll());
+        assertEquals(List.copyOf(expected.keySet()), ids(repository.findAll()));
+        for (User user : expected.values())
+            assertEquals(user.getId(), repository.findByEmail(user.getEmail()).orElseThrow().getId());
+        assertEquals(List.copyOf(expected.keySet()),
+                ids(repository.findByBirthdayAfterAndBefore(LocalDate.MIN, LocalDate.MAX)));
+    }
+
+
+    @Test
+    void testReadersSeeWholeBatches() throws Exception {
+        int batch = 100;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var writer = executor.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                String prefix = "user" + i + "-";
+                repository.saveAll(LongStream.range(0, batch)
+                        .mapToObj(j -> newUser(prefix + j, LocalDate.of(2000, 1, 1))).toList());
+            }
+        });
+        while (!writer.isDone()) {
+            assertEquals(0, repository.findAll().size() % batch);
+            assertEquals(0, repository.findByBirthdayAfterAndBefore(LocalDate.MIN, LocalDate.MAX).size() % batch);
+        }
+        writer.get();
+        executor.shutdown();
+        assertEquals(200 * batch, repository.size());
+    }
+
+
+
+    /**
+     * Writers of different segments and of the same emails at once, the email index
+     * and the segments must agree afterwards.
+     */
+    @Test
+    void testConcurrentWriters() throws Exception {
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            SplittableRandom random = new SplittableRandom(w);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    String name = "user" + random.nextInt(500);
+                    try {
+                        User user = repository.save(newUser(name, LocalDate.ofEpochDay(random.nextInt(20_000))));
+                        if (random.nextBoolean())
+                            repository.deleteById(user.getId());
+                    } catch (EmailConflictException e) {
+                        // another writer has the email
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        List<User> users = repository.findAll();
+        assertEquals(users.size(), repository.count());
+        assertEquals(users.size(), users.stream().map(User::getEmail).distinct().count());
+        for (User user : users)
+            assertEquals(user, repository.findByEmail(user.getEmail()).orElseThrow());
+        assertEquals(ids(users), ids(repository.findByBirthdayAfterAndBefore(LocalDate.MIN, LocalDate.MAX)));
+    }
+
+}
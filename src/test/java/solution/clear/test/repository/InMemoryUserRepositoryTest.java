@@ -0,0 +1,239 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import solution.clear.test.entity.User;
+import solution.clear.test.exception.EmailConflictException;
+import solution.clear.test.exception.VersionConflictException;
+
+class InMemoryUserRepositoryTest {
+
+    private InMemoryUserRepository repository = new InMemoryUserRepository();
+
+
+    private static User newUser(String name, LocalDate birthday) {
+        return new User(0, name + "@mail.com", name, "Last", birthday, null, null);
+    }
+
+
+    @Test
+    void testSaveFindDelete() {
+        User user = repository.save(newUser("first", LocalDate.of(2000, 1, 1)));
+        assertEquals(1, user.getId());
+        assertTrue(repository.exists(1));
+        assertFalse(repository.notExists(1));
+        assertSame(user, repository.findById(1).orElseThrow());
+        assertNull(repository.update(newUser("second", LocalDate.of(2000, 1, 1))));
+        assertSame(user, repository.deleteById(1));
+        assertTrue(repository.findById(1).isEmpty());
+        assertNull(repository.deleteById(1));
+    }
+
+
+    @Test
+    void testConditionalUpdate() {
+        User user = repository.save(newUser("first", LocalDate.of(2000, 1, 1)));
+        assertEquals(0, user.getVersion());
+        User changed = newUser("second", LocalDate.of(2000, 1, 1));
+        changed.setId(user.getId());
+        assertEquals(1, repository.update(changed, 0).getVersion());
+        User stale = newUser("third", LocalDate.of(2000, 1, 1));
+        stale.setId(user.getId());
+        assertThrows(VersionConflictException.class, () -> repository.update(stale, 0));
+        assertEquals("second", repository.findById(user.getId()).orElseThrow().getFirstName());
+        assertNull(repository.update(newUser("fourth", LocalDate.of(2000, 1, 1)), 0));
+    }
+
+
+    @Test
+    void testUniqueEmail() {
+        User first = repository.save(newUser("first", LocalDate.of(2000, 1, 1)));
+        assertSame(first, repository.findByEmail(" FIRST@mail.com").orElseThrow());
+        User duplicate = newUser("second", LocalDate.of(2000, 1, 1));
+        duplicate.setEmail("First@Mail.com");
+        assertThrows(EmailConflictException.class, () -> repository.save(duplicate));
+        assertEquals(1, repository.count());
+        
+        User second = repository.save(newUser("second", LocalDate.of(2000, 1, 1)));
+        User changed = newUser("second", LocalDate.of(2000, 1, 1));
+        changed.setId(second.getId());
+        changed.setEmail("first@mail.com");
+        assertThrows(EmailConflictException.class, () -> repository.update(changed));
+        assertEquals(Arrays.asList(null, second), repository.updateAll(List.of(changed, second)));
+        
+        changed.setEmail("third@mail.com");
+        repository.update(changed);
+        assertTrue(repository.findByEmail("second@mail.com").isEmpty());
+        assertEquals(second.getId(), repository.findByEmail("third@mail.com").orElseThrow().getId());
+        assertEquals(second.getId() + 1, repository.save(newUser("second", LocalDate.of(2000, 1, 1))).getId());
+        
+        repository.deleteById(first.getId());
+        assertTrue(repository.findByEmail("first@mail.com").isEmpty());
+        List<User> saved = repository.saveAll(List.of(newUser("first", LocalDate.of(2000, 1, 1)), 
+                newUser("FIRST", LocalDate.of(2000, 1, 1)), newUser("third", LocalDate.of(2000, 1, 1))));
+        assertNotNull(saved.get(0));
+        assertNull(saved.get(1));
+        assertNull(saved.get(2));
+        assertEquals(saved.get(0), repository.findByEmail("first@mail.com").orElseThrow());
+    }
+
+
+    @Test
+    void testSetKeepsIdSequence() {
+        User user = newUser("first", LocalDate.of(2000, 1, 1));
+        user.setId(10);
+        repository.set(List.of(user));
+        assertEquals(11, repository.save(newUser("second", LocalDate.of(2000, 1, 1))).getId());
+        assertEquals(List.of(10L, 11L), repository.findAll().stream().map(User::getId).toList());
+    }
+
+
+    @Test
+    void testFindByBirthday() {
+        repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("b", LocalDate.of(1990, 1, 1)));
+        repository.save(newUser("c", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("d", LocalDate.of(2010, 1, 1)));
+        assertEquals(List.of(1L, 3L), repository.findByBirthdayAfterAndBefore(
+                LocalDate.of(2000, 1, 1), LocalDate.of(2000, 1, 1)).stream().map(User::getId).toList());
+        assertEquals(List.of(1L, 2L, 3L), repository.findByBirthdayAfterAndBefore(
+                LocalDate.MIN, LocalDate.of(2005, 1, 1)).stream().map(User::getId).toList());
+
+        User moved = newUser("b", LocalDate.of(2010, 1, 1));
+        moved.setId(2);
+        repository.update(moved);
+        repository.deleteById(4);
+        assertEquals(List.of(1L, 3L), repository.findByBirthdayAfterAndBefore(
+                LocalDate.MIN, LocalDate.of(2005, 1, 1)).stream().map(User::getId).toList());
+        assertEquals(List.of(2L), repository.findByBirthdayAfterAndBefore(
+                LocalDate.of(2005, 1, 1), LocalDate.MAX).stream().map(User::getId).toList());
+    }
+
+
+    @Test
+    void testFindPage() {
+        repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("b", LocalDate.of(1990, 1, 1)));
+        repository.save(newUser("c", LocalDate.of(2000, 1, 1)));
+        repository.save(newUser("d", LocalDate.of(2010, 1, 1)));
+        List<User> page = repository.findPage(LocalDate.MIN, LocalDate.MAX, null, 2);
+        assertEquals(List.of(2L, 1L), page.stream().map(User::getId).toList());
+        page = repository.findPage(LocalDate.MIN, LocalDate.MAX, UserCursor.of(page.get(1)), 2);
+        assertEquals(List.of(3L, 4L), page.stream().map(User::getId).toList());
+        assertEquals(List.of(), repository.findPage(LocalDate.MIN, LocalDate.of(2005, 1, 1), 
+                UserCursor.of(page.get(1)), 2));
+        assertEquals(UserCursor.of(page.get(0)), UserCursor.decode(UserCursor.of(page.get(0)).encode()));
+    }
+
+
+    @Test
+    void testFindByNamePrefix() {
+        User ann = repository.save(new User(0, "ann@mail.com", "Ann", "Annis", LocalDate.of(2000, 1, 1), null, null));
+        User anna = repository.save(new User(0, "anna@mail.com", "anna", "Smith", LocalDate.of(2000, 1, 1), null, null));
+        User bob = repository.save(new User(0, "bob@mail.com", "Bob", "Annan", LocalDate.of(2000, 1, 1), null, null));
+        assertEquals(List.of(ann, anna, bob), repository.findByNamePrefix(" AN", 10));
+        assertEquals(List.of(ann, anna), repository.findByNamePrefix("ann", 2));
+        assertEquals(List.of(bob), repository.findByNamePrefix("annan", 10));
+        assertEquals(List.of(), repository.findByNamePrefix("c", 10));
+        
+        User renamed = new User(bob.getId(), "bob@mail.com", "Bob", "Carter", LocalDate.of(2000, 1, 1), null, null);
+        repository.update(renamed);
+        repository.deleteById(anna.getId());
+        assertEquals(List.of(ann), repository.findByNamePrefix("an", 10));
+        assertEquals(List.of(renamed), repository.findByNamePrefix("car", 10));
+        
+        repository.set(repository.findAll());
+        assertEquals(List.of(ann), repository.findByNamePrefix("an", 10));
+        assertEquals(List.of(renamed), repository.findByNamePrefix("b", 10));
+    }
+
+
+    @Test
+    void testRepeatedValuesAreShared() {
+        User first = repository.save(new User(0, "a@mail.com", new String("Ann"), new String("Smith"),
+                LocalDate.of(2000, 1, 1), new String("Kyiv"), null));
+        User second = repository.save(new User(0, "b@mail.com", new String("Bob"), new String("Smith"),
+                LocalDate.of(2000, 1, 1), new String("Kyiv"), null));
+        assertSame(first.getLastName(), second.getLastName());
+        assertSame(first.getAddress(), second.getAddress());
+        assertNull(second.getPhone());
+        
+        User loaded = new User(3, "c@mail.com", new String("Ann"), "Lee", LocalDate.of(2000, 1, 1), null, null);
+        repository.set(List.of(first, second, loaded));
+        assertSame(first.getFirstName(), repository.findById(3).orElseThrow().getFirstName());
+        assertTrue(repository.dictionary().savedBytes() > 0);
+        assertEquals(0.5, repository.dictionary().hitRatio(), 0.2);
+    }
+
+
+    private List<String> nameKeys(String name) {
+        Object version = ReflectionTestUtils.getField(repository, "version");
+        PersistentSortedMap<?, ?> names = ReflectionTestUtils.invokeMethod(version, "names");
+        List<String> keys = new ArrayList<>();
+        for (Object key : names.keys())
+            if (name.equals(ReflectionTestUtils.invokeMethod(key, "name")))
+                keys.add(ReflectionTestUtils.invokeMethod(key, "name"));
+        return keys;
+    }
+
+
+    @Test
+    void testNameKeysAreShared() {
+        repository.save(new User(0, "a@mail.com", new String("Ann"), "Smith", LocalDate.of(2000, 1, 1), null, null));
+        repository.save(new User(0, "b@mail.com", new String("ANN "), "Lee", LocalDate.of(2000, 1, 1), null, null));
+        List<String> keys = nameKeys("ann");
+        assertEquals(2, keys.size());
+        assertSame(keys.get(0), keys.get(1));
+        
+        repository.set(repository.findAll());
+        keys = nameKeys("ann");
+        assertEquals(2, keys.size());
+        assertSame(keys.get(0), keys.get(1));
+    }
+
+
+    @Test
+    void testConcurrentSave() throws Exception {
+        int count = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < count; i++) {
+            String name = "user" + i;
+            executor.execute(() -> repository.save(newUser(name, LocalDate.of(2000, 1, 1))));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(LongStream.rangeClosed(1, count).boxed().toList(),
+                repository.findAll().stream().map(User::getId).toList());
+    }
+
+
+    @Test
+    void testReadersSeeWholeBatches() throws Exception {
+        int batch = 100;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var writer = executor.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                String prefix = "user" + i + "-";
+                repository.saveAll(LongStream.range(0, batch)
+                        .mapToObj(j -> newUser(prefix + j, LocalDate.of(2000, 1, 1))).toList());
+            }
+        });
+        while (!writer.isDone()) {
+            assertEquals(0, repository.findAll().size() % batch);
+            assertEquals(0, repository.findByBirthdayAfterAndBefore(LocalDate.MIN, LocalDate.MAX).size() % batch);
+        }
+        writer.get();
+        executor.shutdown();
+        assertEquals(200 * batch, repository.size());
+    }
+
+}
@@ -0,0 +1,78 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class PersistentHashMapTest {
+
+    private static final ToLongFunction<Long> KEY = Long::longValue;
+
+
+    private static long randomKey(Random random) {
+        // small keys share nodes, large and negative ones split down to the last levels
+        return switch (random.nextInt(3)) {
+            case 0 -> random.nextInt(2_000);
+            case 1 -> random.nextInt(2_000) * (1L << 40);
+            default -> random.nextLong();
+        };
+    }
+
+
+    private static void assertContents(Map<Long, Long> expected, PersistentHashMap<Long> map, List<Long> keys) {
+        assertEquals(expected.size(), map.size());
+        for (long key : keys)
+            assertEquals(expected.get(key), map.get(key));
+    }
+
+
+    @Test
+    void testMatchesHashMap() {
+        Random random = new Random(42);
+        Map<Long, Long> expected = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        PersistentHashMap<Long> map = PersistentHashMap.empty(KEY);
+        for (int i = 0; i < 30_000; i++) {
+            long key = keys.isEmpty() || random.nextBoolean() ? randomKey(random)
+                    : keys.get(random.nextInt(keys.size()));
+            keys.add(key);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, key);
+                map = map.put(key);
+            }
+        }
+        assertContents(expected, map, keys);
+        assertContents(expected, PersistentHashMap.of(new ArrayList<>(expected.values()), KEY), keys);
+        for (long key : expected.keySet())
+            map = map.remove(key);
+        assertEquals(0, map.size());
+        assertNull(map.get(keys.get(0)));
+    }
+
+
+    @Test
+    void testOldVersionsUnchanged() {
+        PersistentHashMap<Long> map = PersistentHashMap.of(LongStream.range(0, 100).boxed().toList(), KEY);
+        PersistentHashMap<Long> changed = map.remove(50).put(200L).put(Long.MIN_VALUE);
+        assertEquals(100, map.size());
+        assertEquals(50, map.get(50));
+        assertNull(map.get(200));
+        assertNull(map.get(Long.MIN_VALUE));
+        assertEquals(101, changed.size());
+        assertNull(changed.get(50));
+        assertEquals(Long.MIN_VALUE, changed.get(Long.MIN_VALUE));
+        assertEquals(99, changed.get(99));
+        assertSame(map, map.remove(500));
+        assertThrows(IllegalArgumentException.class, () -> PersistentHashMap.of(List.of(1L, 2L, 1L), KEY));
+    }
+
+}
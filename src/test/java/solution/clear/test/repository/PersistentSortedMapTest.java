@@ -0,0 +1,58 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class PersistentSortedMapTest {
+
+    private static List<Integer> values(Iterable<Integer> iterable) {
+        List<Integer> result = new ArrayList<>();
+        iterable.forEach(result::add);
+        return result;
+    }
+
+
+    @Test
+    void testMatchesTreeMap() {
+        Random random = new Random(42);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, key);
+                map = map.put(key, key);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.values()), values(map.values()));
+        assertEquals(new ArrayList<>(expected.subMap(100, false, 900, true).values()),
+                values(map.values(100, false, 900, true)));
+        assertEquals(new ArrayList<>(expected.subMap(100, true, 900, false).values()),
+                values(map.values(100, true, 900, false)));
+        assertEquals(expected.get(500), map.get(500));
+    }
+
+
+    @Test
+    void testOldVersionsUnchanged() {
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.ofSorted(
+                IntStream.range(0, 100).boxed().toList(), value -> value);
+        PersistentSortedMap<Integer, Integer> changed = map.remove(50).put(200, 200);
+        assertEquals(100, map.size());
+        assertEquals(50, map.get(50));
+        assertNull(map.get(200));
+        assertEquals(100, changed.size());
+        assertNull(changed.get(50));
+        assertSame(map, map.remove(500));
+    }
+
+}
@@ -0,0 +1,38 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class StringDictionaryTest {
+
+    @Test
+    void testCanonical() {
+        StringDictionary dictionary = new StringDictionary(1000);
+        String kyiv = new String("Kyiv");
+        assertSame(kyiv, dictionary.canonical(kyiv));
+        assertSame(kyiv, dictionary.canonical(new String("Kyiv")));
+        assertSame(kyiv, dictionary.canonical(kyiv));
+        assertNull(dictionary.canonical(null));
+        assertEquals(1, dictionary.misses());
+        assertEquals(2, dictionary.hits());
+        assertEquals(2.0 / 3, dictionary.hitRatio(), 1e-9);
+        assertEquals(24 + 24, dictionary.savedBytes());
+        assertSame("Львів", dictionary.canonical("Львів"));
+        dictionary.canonical(new String("Львів"));
+        assertEquals(24 + 24 + 24 + 32, dictionary.savedBytes());
+    }
+
+
+    @Test
+    void testBounded() {
+        StringDictionary dictionary = new StringDictionary(4);
+        String first = new String("value0");
+        dictionary.canonical(first);
+        for (int i = 1; i < 1000; i++)
+            dictionary.canonical("value" + i);
+        String again = new String("value0");
+        assertSame(again, dictionary.canonical(again));
+        assertEquals(1001, dictionary.misses());
+    }
+
+}
@@ -0,0 +1,125 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import solution.clear.test.entity.User;
+
+class UserJournalTest {
+
+    @TempDir
+    private Path dir;
+
+
+    private UserJournal journal() {
+        UserJournal journal = new UserJournal();
+        ReflectionTestUtils.setField(journal, "dir", dir);
+        ReflectionTestUtils.setField(journal, "fsync", UserJournal.FsyncPolicy.ALWAYS);
+        ReflectionTestUtils.setField(journal, "fsyncInterval", 10L);
+        return journal;
+    }
+
+
+    private InMemoryUserRepository repository(UserJournal journal) {
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        ReflectionTestUtils.setField(repository, "journal", journal);
+        repository.recover();
+        return repository;
+    }
+
+
+    private static User newUser(String name, LocalDate birthday) {
+        return new User(0, name + "@mail.com", name, "Last", birthday, name.isEmpty() ? null : "Kyiv", null);
+    }
+
+
+    private long count(String prefix) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+
+    @Test
+    void testRecovery() throws Exception {
+        UserJournal journal = journal();
+        InMemoryUserRepository repository = repository(journal);
+        repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        repository.saveAll(List.of(newUser("b", LocalDate.of(1990, 1, 1)), newUser("", LocalDate.of(1980, 1, 1))));
+        User updated = newUser("Ärger", LocalDate.of(2010, 1, 1));
+        updated.setId(1);
+        repository.update(updated);
+        repository.deleteById(3);
+        List<User> expected = repository.findAll();
+        journal.close();
+
+        journal = journal();
+        repository = repository(journal);
+        assertEquals(expected, repository.findAll());
+        assertEquals(List.of(1L, 2L), repository.findAll().stream().map(User::getId).toList());
+        repository.checkpoint();
+        assertEquals(1, count("snapshot-"));
+        assertEquals(1, count("segment-"));
+        repository.save(newUser("d", LocalDate.of(2001, 1, 1)));
+        expected = repository.findAll();
+        journal.close();
+
+        journal = journal();
+        repository = repository(journal);
+        assertEquals(expected, repository.findAll());
+        assertEquals(List.of(1L, 2L, 4L), repository.findAll().stream().map(User::getId).toList());
+        assertEquals(5, repository.save(newUser("e", LocalDate.of(2002, 1, 1))).getId());
+        journal.close();
+    }
+
+
+
+    @Test
+    void testFailedAppendChangesNothing() throws Exception {
+        UserJournal journal = journal();
+        InMemoryUserRepository repository = repository(journal);
+        User user = repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        ReflectionTestUtils.setField(journal, "failure", new IOException("disk full"));
+
+        User updated = newUser("b", LocalDate.of(2010, 1, 1));
+        updated.setId(user.getId());
+        assertThrows(UncheckedIOException.class, () -> repository.update(updated));
+        assertThrows(UncheckedIOException.class, () -> repository.deleteById(user.getId()));
+        assertThrows(UncheckedIOException.class, () -> repository.save(newUser("c", LocalDate.of(2000, 1, 1))));
+        assertEquals(List.of(user), repository.findAll());
+        assertEquals(user, repository.findByEmail("a@mail.com").orElseThrow());
+        assertTrue(repository.findByEmail("b@mail.com").isEmpty());
+        assertTrue(repository.findByEmail("c@mail.com").isEmpty());
+        journal.close();
+    }
+
+
+    @Test
+    void testFailedWriteIsNotPublished() throws Exception {
+        UserJournal journal = journal();
+        InMemoryUserRepository repository = repository(journal);
+        User user = repository.save(newUser("a", LocalDate.of(2000, 1, 1)));
+        // the records are accepted, the writer fails on them
+        ((FileChannel) ReflectionTestUtils.getField(journal, "channel")).close();
+
+        User updated = newUser("b", LocalDate.of(2010, 1, 1));
+        updated.setId(user.getId());
+        assertThrows(UncheckedIOException.class, () -> repository.update(updated));
+        assertEquals(List.of(user), repository.findAll());
+        assertEquals(user, repository.findByEmail("a@mail.com").orElseThrow());
+        assertTrue(repository.findByEmail("b@mail.com").isEmpty());
+        assertThrows(UncheckedIOException.class, () -> repository.save(newUser("c", LocalDate.of(2000, 1, 1))));
+        assertEquals(List.of(user), repository.findAll());
+        journal.close();
+    }
+
+}
@@ -0,0 +1,71 @@
+package solution.clear.test.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import solution.clear.test.entity.User;
+
+class UserSnapshotTest {
+
+    @TempDir
+    private Path dir;
+
+
+    private static List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= count; i++)
+            users.add(new User(i, "user" + i + "@mail.com", "Имя " + i, "Last", 
+                    LocalDate.of(1950, 1, 1).plusDays(i), i % 3 == 0 ? null : "Kyiv", i % 2 == 0 ? null : "103"));
+        return users;
+    }
+
+
+    @Test
+    void testChunkedRoundTrip() throws Exception {
+        Path file = dir.resolve("users.snap");
+        List<User> users = users(10_000);
+        UserSnapshot.write(file, 12_345, users, 4096);
+        UserSnapshot.Content content = UserSnapshot.read(file);
+        assertEquals(12_345, content.lastId());
+        assertEquals(users, content.users());
+        assertEquals(users.stream().map(User::getId).toList(), content.users().stream().map(User::getId).toList());
+    }
+
+
+    @Test
+    void testEmpty() throws Exception {
+        Path file = dir.resolve("empty.snap");
+        UserSnapshot.write(file, 0, List.of());
+        assertEquals(List.of(), UserSnapshot.read(file).users());
+    }
+
+
+    @Test
+    void testLoader() throws Exception {
+        Path file = dir.resolve("users.snap");
+        UserSnapshot.write(file, 20_000, users(1000));
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        UserSnapshotLoader loader = new UserSnapshotLoader();
+        ReflectionTestUtils.setField(loader, "repository", repository);
+        List<Object> states = new ArrayList<>();
+        ReflectionTestUtils.setField(loader, "publisher",
+                (ApplicationEventPublisher) event -> states.add(((AvailabilityChangeEvent<?>) event).getState()));
+        ReflectionTestUtils.setField(loader, "file", file);
+        loader.afterSingletonsInstantiated();
+        // accepting traffic is left to Boot once the application is ready
+        assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC), states);
+        assertEquals(1000, repository.size());
+        assertEquals(users(1000), repository.findAll());
+        assertEquals(20_001, repository.save(
+                new User(0, "new@mail.com", "New", "Last", LocalDate.of(2000, 1, 1), null, null)).getId());
+    }
+
+}
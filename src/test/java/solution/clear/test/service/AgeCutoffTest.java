@@ -0,0 +1,89 @@
+package solution.clear.test.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+
+class AgeCutoffTest {
+
+    private static final ZoneId ZONE = ZoneOffset.ofHours(2);
+
+
+    /**
+     * Clock moved by the test.
+     */
+    private static class TestClock extends Clock {
+
+        private Instant instant;
+
+
+        TestClock(LocalDateTime time) {
+            set(time);
+        }
+
+
+        void set(LocalDateTime time) {
+            instant = time.atZone(ZONE).toInstant();
+        }
+
+
+        @Override
+        public ZoneId getZone() {
+            return ZONE;
+        }
+
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+    }
+
+
+    /**
+     * The check the cutoff replaces.
+     */
+    private static boolean plusYears(LocalDate birthday, long limit, LocalDate today) {
+        return !birthday.plusYears(limit).isAfter(today);
+    }
+
+
+    @Test
+    void testSameAsPlusYears() {
+        TestClock clock = new TestClock(LocalDate.of(2024, 2, 25).atStartOfDay());
+        AgeCutoff cutoff = new AgeCutoff(clock, 18);
+        for (LocalDate today = LocalDate.of(2024, 2, 25); today.isBefore(LocalDate.of(2028, 3, 5)); 
+                today = today.plusDays(1)) {
+            clock.set(today.atTime(12, 0));
+            for (LocalDate birthday = today.minusYears(18).minusDays(3); 
+                    birthday.isBefore(today.minusYears(18).plusDays(3)); birthday = birthday.plusDays(1))
+                assertEquals(plusYears(birthday, 18, today), cutoff.allows(birthday), today + " " + birthday);
+        }
+    }
+
+
+    @Test
+    void testRollsOverAtMidnight() {
+        TestClock clock = new TestClock(LocalDateTime.of(2024, 6, 9, 23, 59, 59));
+        AgeCutoff cutoff = new AgeCutoff(clock, 18);
+        LocalDate birthday = LocalDate.of(2006, 6, 10);
+        assertFalse(cutoff.allows(birthday));
+        clock.set(LocalDateTime.of(2024, 6, 10, 0, 0));
+        assertTrue(cutoff.allows(birthday));
+        assertTrue(cutoff.allows(LocalDate.of(2006, 6, 9)));
+        assertFalse(cutoff.allows(LocalDate.of(2006, 6, 11)));
+    }
+
+}
@@ -0,0 +1,84 @@
+package solution.clear.test.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import solution.clear.test.entity.User;
+
+class UserPatchTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final User user = new User(7, "email@email.com", "First", "Last", LocalDate.of(2000, 2, 2), 
+            "Address", null, 3);
+
+
+    private User generic(JsonNode patch) throws Exception {
+        return objectMapper.treeToValue(
+                JsonPatch.fromJson(patch).apply(objectMapper.convertValue(user, JsonNode.class)), User.class);
+    }
+
+
+    @Test
+    void testSameAsGeneric() throws Exception {
+        JsonNode patch = objectMapper.readTree("["
+                + "{\"op\":\"test\",\"path\":\"/phone\",\"value\":null},"
+                + "{\"op\":\"replace\",\"path\":\"/email\",\"value\":\"new@email.com\"},"
+                + "{\"op\":\"add\",\"path\":\"/phone\",\"value\":\"+380960000000\"},"
+                + "{\"op\":\"remove\",\"path\":\"/address\"},"
+                + "{\"op\":\"replace\",\"path\":\"/birthday\",\"value\":\"1990-01-01\"},"
+                + "{\"op\":\"test\",\"path\":\"/email\",\"value\":\"new@email.com\"}]");
+        User patched = UserPatch.compile(patch).apply(user);
+        assertEquals(generic(patch), patched);
+        assertEquals(user.getId(), patched.getId());
+        assertEquals(user.getVersion(), patched.getVersion());
+        assertEquals("Address", user.getAddress());
+    }
+
+
+    @Test
+    void testFailedTest() throws Exception {
+        JsonNode patch = objectMapper.readTree("[{\"op\":\"test\",\"path\":\"/email\",\"value\":\"other\"}]");
+        assertThrows(JsonPatchException.class, () -> UserPatch.compile(patch).apply(user));
+        assertThrows(JsonPatchException.class, () -> generic(patch));
+    }
+
+
+    @Test
+    void testLeftToGeneric() throws Exception {
+        for (String patch : new String[] {
+                "{\"op\":\"replace\",\"path\":\"/email\",\"value\":\"x\"}",
+                "[{\"op\":\"copy\",\"from\":\"/email\",\"path\":\"/phone\"}]",
+                "[{\"op\":\"replace\",\"path\":\"/id\",\"value\":1}]",
+                "[{\"op\":\"replace\",\"path\":\"/phone\",\"value\":380960000000}]",
+                "[{\"op\":\"replace\",\"path\":\"/birthday\",\"value\":\"01.01.2000\"}]",
+                "[{\"op\":\"remove\",\"path\":\"/birthday\"}]",
+                "[{\"op\":\"replace\",\"path\":\"/phone\"}]"})
+            assertNull(UserPatch.compile(objectMapper.readTree(patch)), patch);
+    }
+
+
+
+    @Test
+    void testCachedPlan() throws Exception {
+        UserPatchCache cache = new UserPatchCache();
+        cache.cacheSize = 10;
+        cache.init();
+        UserPatch.Bound first = cache.compile(objectMapper.readTree(
+                "[{\"op\":\"replace\",\"path\":\"/phone\",\"value\":\"1\"}]"));
+        UserPatch.Bound second = cache.compile(objectMapper.readTree(
+                "[{\"op\":\"replace\",\"path\":\"/phone\",\"value\":\"2\"}]"));
+        assertSame(first.plan(), second.plan());
+        assertEquals("1", first.apply(user).getPhone());
+        assertEquals("2", second.apply(user).getPhone());
+        assertNull(cache.compile(objectMapper.readTree(
+                "[{\"op\":\"replace\",\"path\":\"/phone\",\"value\":2}]")));
+        assertNull(cache.compile(objectMapper.readTree("[{\"op\":\"move\",\"path\":\"/phone\",\"from\":\"/email\"}]")));
+        assertEquals(2, cache.size());
+    }
+
+}
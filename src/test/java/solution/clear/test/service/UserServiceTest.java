@@ -2,6 +2,9 @@ package solution.clear.test.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -63,6 +66,25 @@ class UserServiceTest {
     }
     
     
+    @Test
+    void testGetUserJson() throws Exception {
+        User user98 = new User(98, "email@email.com", "First", "Last", LocalDate.of(2000, 2, 2), null, null, 5);
+        when(repository.findById(98)).thenReturn(Optional.of(user98));
+        when(repository.notExists(98)).thenReturn(false);
+        when(repository.deleteById(98)).thenReturn(user98);
+        
+        UserJson json = service.getUserJson(98);
+        assertEquals(5, json.version());
+        assertEquals(user98, objectMapper.readValue(json.json(), User.class));
+        assertSame(json, service.getUserJson(98));
+        verify(repository, times(1)).findById(98);
+        
+        service.delete(98);
+        assertNotSame(json, service.getUserJson(98));
+        verify(repository, times(2)).findById(98);
+    }
+    
+    
     @Test
     void testCreate() {
         when(repository.save(any())).thenReturn(user99);
@@ -98,7 +120,7 @@ class UserServiceTest {
     @Test
     void testUpdateSomeFields() {
         when(repository.findById(99)).thenReturn(Optional.of(user99));
-        when(repository.save(any())).thenReturn(user99);
+        when(repository.update(any(), anyLong())).thenReturn(user99);
         
         assertThrows(AgeNotValidException.class,
                 () -> service.update(99, "", "", "", LocalDate.now(), null, null),
@@ -113,7 +135,7 @@ class UserServiceTest {
         when(repository.findById(1)).thenReturn(Optional.empty());
         when(repository.findById(99)).thenReturn(Optional.of(user99));
         when(repository.findById(99)).thenReturn(Optional.of(user99));
-        when(repository.save(any())).thenReturn(user99);
+        when(repository.update(any(), anyLong())).thenReturn(user99);
         
         assertThrows(UserNotFoundException.class, () -> 
                 service.patch(1, JsonPatch.fromJson(objectMapper.readValue(
@@ -140,6 +162,52 @@ class UserServiceTest {
     }
     
     
+    @Test
+    void testSearchCache() {
+        LocalDate from = LocalDate.of(1990, 1, 1);
+        LocalDate to = LocalDate.of(1990, 1, 31);
+        User user10 = new User(10, "email@email.com", "First", "Last", LocalDate.of(1990, 1, 10), null, null);
+        User user20 = new User(20, "email@email.com", "First", "Last", LocalDate.of(1990, 1, 20), null, null);
+        User user15 = new User(15, "email@email.com", "First", "Last", LocalDate.of(1990, 1, 15), null, null);
+        when(repository.findByBirthdayAfterAndBefore(from, to)).thenReturn(List.of(user10, user20));
+        when(repository.save(any())).thenReturn(user15);
+        when(repository.findById(15)).thenReturn(Optional.of(user15));
+        when(repository.notExists(10)).thenReturn(false);
+        when(repository.deleteById(10)).thenReturn(user10);
+        
+        assertEquals(List.of(user10, user20), service.search(from, to));
+        assertEquals(List.of(user10, user20), service.search(from, to));
+        service.create(new User(0, "email@email.com", "First", "Last", LocalDate.of(1990, 1, 15), null, null));
+        List<User> found = service.search(from, to);
+        assertEquals(List.of(10L, 15L, 20L), found.stream().map(User::getId).toList());
+        service.delete(10);
+        found = service.search(from, to);
+        assertEquals(List.of(15L, 20L), found.stream().map(User::getId).toList());
+        verify(repository, times(1)).findByBirthdayAfterAndBefore(from, to);
+    }
+    
+    
+    @Test
+    void testSearchCacheOutOfOrder() {
+        LocalDate from = LocalDate.of(1980, 1, 1);
+        LocalDate to = LocalDate.of(1980, 1, 31);
+        User user10 = new User(10, "email@email.com", "First", "Last", LocalDate.of(1980, 1, 10), null, null, 0);
+        User user20 = new User(20, "email@email.com", "First", "Last", LocalDate.of(1980, 1, 20), null, null, 0);
+        User moved20 = new User(20, "email@email.com", "First", "Last", LocalDate.of(1980, 2, 20), null, null, 2);
+        User renamed20 = new User(20, "email@email.com", "Renamed", "Last", LocalDate.of(1980, 1, 20), null, null, 1);
+        when(repository.findByBirthdayAfterAndBefore(from, to)).thenReturn(List.of(user10, user20));
+        when(repository.findById(20)).thenReturn(Optional.of(moved20));
+        
+        assertEquals(List.of(user10, user20), service.search(from, to));
+        // the delete of user 10 and the move of user 20 out of the range are reported first
+        service.removed(List.of(10L));
+        service.changed(List.of(moved20));
+        service.changed(List.of(user10, renamed20));
+        assertEquals(List.of(), service.search(from, to));
+        verify(repository, times(1)).findByBirthdayAfterAndBefore(from, to);
+    }
+    
+    
     @Test
     void testSearch() {
         List<User> all = List.of(user99, userInvalid);